@@ -1,7 +1,77 @@
 package com.aweform;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
 
 //
 // AweformJSON
@@ -14,7 +84,57 @@ import java.util.List;
 
 public class AweformJSON {
 
-    public class InvalidSyntaxException extends Exception {
+    private static final int ATTRIBUTE_INDEX_THRESHOLD = 12;
+    private static final int DEFAULT_MAX_DEPTH = 1000;
+    private static final int PARALLEL_PARSE_THRESHOLD = 1 << 20;
+    private static final int MAX_MAPPING_SIZE = 1 << 30;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final byte DECODED_LONG = 1;
+    private static final byte DECODED_DOUBLE = 2;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long QUOTES = ONES * '"';
+    private static final long BACKSLASHES = ONES * '\\';
+
+    private static final byte WHITESPACE_CHARACTER = 1;
+    private static final byte NUMBER_CHARACTER = 2;
+    private static final byte[] CHARACTER_CLASSES = new byte[256];
+    private static final Token[] FIRST_CHARACTER_TOKENS = new Token[256];
+
+    static {
+
+        CHARACTER_CLASSES[' '] = WHITESPACE_CHARACTER;
+        CHARACTER_CLASSES['\t'] = WHITESPACE_CHARACTER;
+        CHARACTER_CLASSES['\n'] = WHITESPACE_CHARACTER;
+        CHARACTER_CLASSES['\r'] = WHITESPACE_CHARACTER;
+
+        for (char c : "0123456789-+.eE".toCharArray()) {
+
+            CHARACTER_CLASSES[c] = NUMBER_CHARACTER;
+        }
+
+        Arrays.fill(FIRST_CHARACTER_TOKENS, Token.EndOrUnknown);
+
+        FIRST_CHARACTER_TOKENS['{'] = Token.ObjectStart;
+        FIRST_CHARACTER_TOKENS['}'] = Token.ObjectEnd;
+        FIRST_CHARACTER_TOKENS['['] = Token.ArrayStart;
+        FIRST_CHARACTER_TOKENS[']'] = Token.ArrayEnd;
+        FIRST_CHARACTER_TOKENS[':'] = Token.Colon;
+        FIRST_CHARACTER_TOKENS[','] = Token.Comma;
+        FIRST_CHARACTER_TOKENS['"'] = Token.String;
+        FIRST_CHARACTER_TOKENS['t'] = Token.True;
+        FIRST_CHARACTER_TOKENS['f'] = Token.False;
+        FIRST_CHARACTER_TOKENS['n'] = Token.Null;
+
+        for (char c : "-0123456789".toCharArray()) {
+
+            FIRST_CHARACTER_TOKENS[c] = Token.Number;
+        }
+    }
+
+    public static class InvalidSyntaxException extends Exception {
 
         public InvalidSyntaxException(String message) {
 
@@ -22,12 +142,88 @@ public class AweformJSON {
         }
     }
 
-    private class ParseContext {
+    private KeyCache keyCache;
+    private ParseLimits limits = ParseLimits.DEFAULT;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+
+    // NOTE: parse() allocates a ParseContext per call, so a single AweformJSON can be
+    // shared between threads once it is configured. The parsers of forCurrentThread()
+    // are thread confined and reuse their ParseContext (buffers and stack) instead, see
+    // acquireParseContext()
+
+    private static class ParseContext {
 
-        public char[] chars;
+        public byte[] bytes;						// UTF-8 encoded source, only the [index, end) range is parsed
         public int index;
-        public int peekIndex;
-        public StringBuilder parseStringStringBuilder;
+        public int end;
+        public int tokenIndex;						// where the last token returned by getNextToken() started
+        public Element[] stack;						// the open Objects and Arrays of parseElement()
+        public Projection[] projections;			// the Projection of every open Object and Array
+        public StringBuilder parseStringStringBuilder = new StringBuilder();
+        public KeyCache keyCache;
+        public int maxStringLength = Integer.MAX_VALUE;		// in bytes of the source, escapes included
+        public int maxNumberLength = Integer.MAX_VALUE;
+        public boolean isInUse;
+
+        public void reset() {
+
+            bytes = null;
+            isInUse = false;
+
+            if (stack != null) {
+
+                Arrays.fill(stack, null);
+            }
+
+            if (projections != null) {
+
+                Arrays.fill(projections, null);
+            }
+
+            if (parseStringStringBuilder.capacity() > 65536) {
+
+                parseStringStringBuilder = new StringBuilder();
+            }
+        }
+    }
+
+    private static final ThreadLocal<AweformJSON> threadParsers = ThreadLocal.withInitial(() -> new AweformJSON(Thread.currentThread()));
+
+    private final Thread ownerThread;
+    private final ParseContext reusableContext;
+
+    public AweformJSON() {
+
+        this(null);
+    }
+
+    // a parser with an ownerThread reuses its ParseContext for the calls of that thread
+
+    private AweformJSON(Thread ownerThread) {
+
+        this.ownerThread = ownerThread;
+        this.reusableContext = (ownerThread == null)? null : new ParseContext();
+    }
+
+    // the reusable ParseContext is only handed out to its owner thread and never twice
+    // (a parse() from an InstrumentationListener), every other call gets a new one so
+    // a parser that is shared by mistake still parses correctly
+
+    private ParseContext acquireParseContext() {
+
+        ParseContext parseContext = reusableContext;
+
+        if (parseContext == null || parseContext.isInUse || Thread.currentThread() != ownerThread) {
+
+            parseContext = new ParseContext();
+        }
+
+        parseContext.isInUse = true;
+        parseContext.keyCache = keyCache;
+        parseContext.maxStringLength = limits.maxStringLength;
+        parseContext.maxNumberLength = limits.maxNumberLength;
+
+        return parseContext;
     }
 
     public enum Token {
@@ -46,6 +242,13 @@ public class AweformJSON {
         Null
     }
 
+    public enum JsonStyle {
+
+        Default,									// the classic {"name": value, "name": value} spacing
+        Compact,
+        Pretty
+    }
+
     public enum ElementType {
 
         String,
@@ -56,7 +259,7 @@ public class AweformJSON {
         Null
     }
 
-    public class Ref<T> {
+    public static class Ref<T> {
 
         T value;
 
@@ -66,13 +269,74 @@ public class AweformJSON {
         }
     }
 
-    public class Element {
+    // the attributes of an Object Element, a list that counts all of its modifications
+    // (set included) so the attribute index of the Object can tell when it is stale
+
+    private static final class AttributeList extends ArrayList<Element> {
+
+        private static final long serialVersionUID = 1L;
+
+        public AttributeList() {
+        }
+
+        public AttributeList(int capacity) {
+
+            super(capacity);
+        }
+
+        @Override
+        public Element set(int index, Element element) {
+
+            modCount++;
+
+            return super.set(index, element);
+        }
+
+        int getModCount() {
+
+            return modCount;
+        }
+    }
+
+    // the hash index of a wide Object, see Element.getIndexedAttribute
+
+    private static final class AttributeIndex {
+
+        final int[] slots;							// open addressing table of (position in elements + 1), 0 is empty
+        int modCount;								// the AttributeList.getModCount() the slots are current for
+
+        AttributeIndex(int size, int modCount) {
+
+            this.slots = new int[size];
+            this.modCount = modCount;
+        }
+    }
+
+    // the long value or double bits of a Number, valid while the Element keeps value
+
+    private static final class DecodedNumber {
+
+        final String value;
+        final byte kind;
+        final long bits;
+
+        DecodedNumber(String value, byte kind, long bits) {
+
+            this.value = value;
+            this.kind = kind;
+            this.bits = bits;
+        }
+    }
+
+    public static class Element {
 
         public ElementType type;
         public String name;
         public String value;						// String, Number, true, false, null as a String
         public List<Element> elements;				// Attributes if "Object", Items if "Array"
 
+        private Object cache;						// the AttributeIndex of a wide Object or the DecodedNumber of a Number, allocated on first use
+
         public Element(ElementType type, String value) {
             
             this.type = type;
@@ -87,22 +351,22 @@ public class AweformJSON {
 
         public void setAttribute(String name, Integer value) throws Exception {
 
-            getOrCreateAttributeOfType(name, ElementType.Number).value = value.toString();
+            getOrCreateAttributeOfType(name, ElementType.Number).setLongValue(value);
         }
 
         public void setAttribute(String name, Long value) throws Exception {
 
-            getOrCreateAttributeOfType(name, ElementType.Number).value = value.toString();
+            getOrCreateAttributeOfType(name, ElementType.Number).setLongValue(value);
         }
 
         public void setAttribute(String name, Float value) throws Exception {
 
-            getOrCreateAttributeOfType(name, ElementType.Number).value = value.toString();
+            getOrCreateAttributeOfType(name, ElementType.Number).value = formatFloat(value); // decoded from the text, like a parsed float
         }
 
         public void setAttribute(String name, Double value) throws Exception {
 
-            getOrCreateAttributeOfType(name, ElementType.Number).value = value.toString();
+            getOrCreateAttributeOfType(name, ElementType.Number).setDoubleValue(value, formatDouble(value));
         }
 
         public void setAttribute(String name, Boolean value) throws Exception {
@@ -121,8 +385,18 @@ public class AweformJSON {
                 attribute = new Element(type, "");
                 attribute.name = name;
 
+                AttributeIndex index = getCurrentAttributeIndex();
+
                 elements.add(attribute);
 
+                // keeps filling an Object through setAttribute linear
+
+                if (index != null && elements.size() * 2 <= index.slots.length) {
+
+                    indexAttribute(index, elements.size() - 1);
+                    index.modCount = ((AttributeList)elements).getModCount();
+                }
+
             } else {
 
                 attribute.type = type;
@@ -186,14 +460,9 @@ public class AweformJSON {
                 return defaultValue;
             }
 
-            try {
-
-                return Integer.parseInt(attribute.value);
+            long number = attribute.getValueAsLong(defaultValue);
 
-            } catch (NumberFormatException ex) {
-
-                return defaultValue;
-            }
+            return (number == (int)number)? (int)number : defaultValue;
         }
 
         public long getAttributeAsLong(String name) {
@@ -210,14 +479,7 @@ public class AweformJSON {
                 return defaultValue;
             }
 
-            try {
-                
-                return Long.parseLong(attribute.value);
-
-            } catch (NumberFormatException ex) {
-
-                return defaultValue;
-            }
+            return attribute.getValueAsLong(defaultValue);
         }
 
         public Float getAttributeAsFloat(String name) {
@@ -258,9 +520,30 @@ public class AweformJSON {
                 return defaultValue;
             }
 
+            double number = attribute.getValueAsDouble(Double.NaN);
+
+            return Double.isNaN(number)? defaultValue : number;
+        }
+
+        public BigDecimal getAttributeAsBigDecimal(String name) {
+
+            return getAttributeAsBigDecimal(name, BigDecimal.ZERO);
+        }
+
+        // use for Numbers that do not fit a long or a double without losing precision
+
+        public BigDecimal getAttributeAsBigDecimal(String name, BigDecimal defaultValue) {
+
+            Element attribute = getAttribute(name);
+
+            if (attribute == null || attribute.value == null) {
+
+                return defaultValue;
+            }
+
             try {
 
-                return Double.parseDouble(attribute.value);
+                return new BigDecimal(attribute.value);
 
             } catch (NumberFormatException ex) {
 
@@ -268,524 +551,8391 @@ public class AweformJSON {
             }
         }
 
-        public Element getAttribute(String name) {
+        // Numbers keep their source text as value, the long or double value is decoded on
+        // first use and cached for as long as value is not replaced
 
-            if (type != ElementType.Object) {
+        public long getValueAsLong(long defaultValue) {
 
-                return null;
+            if (value == null) {
+
+                return defaultValue;
             }
 
-            for (Element value : elements) {
+            DecodedNumber decodedNumber = getDecodedNumber();
 
-                if (value.name.equals(name)) {
+            if (decodedNumber != null) {
 
-                    return value;
-                }
+                return (decodedNumber.kind == DECODED_LONG)? decodedNumber.bits : doubleToLong(Double.longBitsToDouble(decodedNumber.bits), defaultValue);
             }
 
-            return null;
-        }
+            try {
 
-        public List<Element> getAttributes() {
+                long number = Long.parseLong(value);
 
-            if (type != ElementType.Object) {
+                if (type == ElementType.Number) { cache = new DecodedNumber(value, DECODED_LONG, number); }
 
-                return null;
+                return number;
+
+            } catch (NumberFormatException ex) {
+
+                if (type != ElementType.Number) {
+
+                    return defaultValue;
+                }
             }
 
-            return elements;
+            return doubleToLong(getValueAsDouble(Double.NaN), defaultValue);
         }
 
-        public List<Element> getItems() {
+        public double getValueAsDouble(double defaultValue) {
 
-            if (type != ElementType.Array) {
+            if (value == null) {
 
-                return null;
+                return defaultValue;
             }
 
-            return elements;
-        }
-
-        public String toJSON() {
+            DecodedNumber decodedNumber = getDecodedNumber();
 
-            if (type == ElementType.Null) {
+            if (decodedNumber != null) {
 
-                return "null";
+                return (decodedNumber.kind == DECODED_DOUBLE)? Double.longBitsToDouble(decodedNumber.bits) : (double)decodedNumber.bits;
+            }
 
-            } else if (type == ElementType.Boolean) {
+            try {
 
-                return value;
+                double number = parseDouble(value);
 
-            } else if (type == ElementType.Number) {
+                if (type == ElementType.Number) { cache = new DecodedNumber(value, DECODED_DOUBLE, Double.doubleToRawLongBits(number)); }
 
-                return value;
+                return number;
 
-            } else if (type == ElementType.String) {
+            } catch (NumberFormatException ex) {
 
-                return "\"" + encodeStringValue(value) + "\"";
+                return defaultValue;
             }
+        }
 
-            StringBuilder sb = new StringBuilder();
+        private DecodedNumber getDecodedNumber() {
 
-            if (type == ElementType.Object) {
+            Object cache = this.cache;
 
-                sb.append("{");
+            return (cache instanceof DecodedNumber && ((DecodedNumber)cache).value == value)? (DecodedNumber)cache : null;
+        }
 
-                Boolean isFirst = true;
+        private void setLongValue(long number) {
 
-                for (Element attribute : elements) {
+            value = Long.toString(number);
+            cache = new DecodedNumber(value, DECODED_LONG, number);
+        }
 
-                    if (isFirst) { isFirst = false; } else { sb.append(", "); }
+        private void setDoubleValue(double number, String text) {
 
-                    sb.append("\"" + encodeStringValue(attribute.name) + "\": ");
-                    sb.append(attribute.toJSON());
-                }
+            value = text;
+            cache = new DecodedNumber(value, DECODED_DOUBLE, Double.doubleToRawLongBits(number));
+        }
 
-                sb.append("}");
+        public Element getAttribute(String name) {
 
-            } else if (type == ElementType.Array) {
+            if (type != ElementType.Object) {
 
-                sb.append("[");
+                return null;
+            }
 
-                Boolean isFirst = true;
+            if (elements.size() < ATTRIBUTE_INDEX_THRESHOLD || name == null || !(elements instanceof AttributeList)) {
 
                 for (Element value : elements) {
 
-                    if (isFirst) { isFirst = false; } else { sb.append(", "); }
-                    sb.append(value.toJSON());
+                    if (value.name.equals(name)) {
+
+                        return value;
+                    }
                 }
 
-                sb.append("]");
+                return null;
             }
 
-            return sb.toString();
+            return getIndexedAttribute(name);
         }
-    }
 
-    public Element parse(String json) throws InvalidSyntaxException {
+        // wide Objects are looked up through a hash index that is built on first use. Any
+        // change of the AttributeList (add, remove, set, clear, ...) since then makes it
+        // stale and it is rebuilt on the next lookup, only setAttribute extends it in place.
+        // Lists that are not an AttributeList (assigned to elements by hand) are scanned.
+        // NOTE: renaming an attribute in place (attribute.name = ...) is not a change of
+        // the list, call reindexAttributes() after that
 
-        if (json == null) { throw new InvalidSyntaxException("Cannot parse a null string"); }
+        private Element getIndexedAttribute(String name) {
 
-        ParseContext parseContext = new ParseContext();
-        parseContext.chars = json.toCharArray();
-        parseContext.parseStringStringBuilder = new StringBuilder();
+            AttributeIndex index = getCurrentAttributeIndex();
 
-        return parseElement(parseContext);
-    }
+            if (index == null) {
 
-    private Element parseElement(ParseContext parseContext) throws InvalidSyntaxException {
+                index = createAttributeIndex();
+            }
 
-        Token nextToken = peekToken(parseContext);
+            int[] slots = index.slots;
+            int mask = slots.length - 1;
 
-        if (nextToken == Token.ObjectStart) {
+            for (int slot = spreadHash(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
 
-            return parseObjectElement(parseContext);
+                int position = slots[slot];
 
-        } else if (nextToken == Token.ArrayStart) {
+                if (position == 0) {
 
-            return parseArrayElement(parseContext);
+                    return null;
+                }
 
-        } else if (nextToken == Token.String) {
+                Element attribute = elements.get(position - 1);
 
-            parseContext.index = parseContext.peekIndex - 1;
-            return new Element(ElementType.String, parseString(parseContext));
+                if (name.equals(attribute.name)) {
 
-        } else if (nextToken == Token.Number) {
+                    return attribute;
+                }
+            }
+        }
 
-            return parseNumberElement(parseContext);
+        public void reindexAttributes() {
 
-        } else if (nextToken == Token.True) {
+            if (type == ElementType.Object && elements instanceof AttributeList) {
 
-            parseContext.index = parseContext.peekIndex;
-            return new Element(ElementType.Boolean, "true");
+                createAttributeIndex();
 
-        } else if (nextToken == Token.False) {
+            } else if (cache instanceof AttributeIndex) {
 
-            parseContext.index = parseContext.peekIndex;
-            return new Element(ElementType.Boolean, "false");
+                cache = null;
+            }
+        }
 
-        } else if (nextToken == Token.Null) {
+        private AttributeIndex createAttributeIndex() {
 
-            parseContext.index = parseContext.peekIndex;
-            return new Element(ElementType.Null, "null");
+            int size = elements.size();
+            AttributeIndex index = new AttributeIndex(Math.max(16, Integer.highestOneBit(Math.max(size, 1) * 4 - 1) << 1), ((AttributeList)elements).getModCount());
 
-        } else {
+            for (int i = 0; i < size; ++i) {
 
-            throw new InvalidSyntaxException("Unexpected token (" + nextToken + ") at char " + parseContext.index);
-        }
-    }
+                indexAttribute(index, i);
+            }
 
-    private Element parseObjectElement(ParseContext parseContext) throws InvalidSyntaxException {
+            cache = index;
 
-        parseContext.index = parseContext.peekIndex;
+            return index;
+        }
 
-        Element objectElement = new Element(ElementType.Object, "");
-        objectElement.elements = new ArrayList<Element>();
+        // null unless the index was built for the current state of the AttributeList
 
-        while (true) {
+        private AttributeIndex getCurrentAttributeIndex() {
 
-            Token nextToken = peekToken(parseContext);
+            Object cache = this.cache;
 
-            if (nextToken == Token.String) {
+            if (cache instanceof AttributeIndex && elements instanceof AttributeList && ((AttributeList)elements).getModCount() == ((AttributeIndex)cache).modCount) {
 
-                String attributeName = parseString(parseContext);
+                return (AttributeIndex)cache;
+            }
 
-                if (getNextToken(parseContext) != Token.Colon) {
+            return null;
+        }
 
-                    throw new InvalidSyntaxException("Unexpected token at char " + parseContext.index + " expected a Colon before the attribute value");
-                }
+        private void indexAttribute(AttributeIndex index, int position) {
 
-                Element attributeElement = parseElement(parseContext);
-                attributeElement.name = attributeName;
+            String name = elements.get(position).name;
 
-                objectElement.elements.add(attributeElement);
+            if (name == null) {
 
-            } else if (nextToken == Token.Comma) {
+                return;
+            }
 
-                if (objectElement.elements.size() == 0) {
+            int[] slots = index.slots;
+            int mask = slots.length - 1;
 
-                    throw new InvalidSyntaxException("Unexpected Comma at the start of an Object at char " + parseContext.index);
-                }
+            for (int slot = spreadHash(name.hashCode()) & mask; ; slot = (slot + 1) & mask) {
 
-                parseContext.index = parseContext.peekIndex;
+                int existingPosition = slots[slot];
 
-            } else if (nextToken == Token.ObjectEnd) {
+                if (existingPosition == 0) {
 
-                parseContext.index = parseContext.peekIndex;
-                return objectElement;
+                    slots[slot] = position + 1;
+                    return;
 
-            } else {
+                } else if (name.equals(elements.get(existingPosition - 1).name)) {
 
-                throw new InvalidSyntaxException("Unexpected token (" + nextToken + ") at char " + parseContext.index);
+                    return; // duplicate names resolve to the first attribute, just like the linear scan
+                }
             }
         }
-    }
 
-    private Element parseArrayElement(ParseContext parseContext) throws InvalidSyntaxException {
-
-        parseContext.index = parseContext.peekIndex;
-
-        Element arrayElement = new Element(ElementType.Array, "");
-        arrayElement.elements = new ArrayList<Element>();
+        public List<Element> getAttributes() {
 
-        while (true) {
+            if (type != ElementType.Object) {
 
-            Token nextToken = peekToken(parseContext);
+                return null;
+            }
 
-            if (nextToken == Token.EndOrUnknown) {
+            return elements;
+        }
 
-                throw new InvalidSyntaxException("Unexpected token (" + nextToken + ") at char " + parseContext.index);
+        public List<Element> getItems() {
 
-            } else if (nextToken == Token.Comma) {
+            if (type != ElementType.Array) {
 
-                if (arrayElement.elements.size() == 0) {
+                return null;
+            }
 
-                    throw new InvalidSyntaxException("Unexpected Comma at the start of an Array at char " + parseContext.index);
-                }
+            return elements;
+        }
 
-                parseContext.index = parseContext.peekIndex;
+        public String toJSON() {
 
-            } else if (nextToken == Token.ArrayEnd) {
+            return toJSON(JsonStyle.Default);
+        }
 
-                parseContext.index = parseContext.peekIndex;
-                break;
+        // creates an immutable, compact copy of this Element, see FrozenElement
 
-            } else {
+        public FrozenElement freeze() {
 
-                arrayElement.elements.add(parseElement(parseContext));
-            }
+            return new FrozenElement(FrozenDocument.freeze(this), 0);
         }
 
-        return arrayElement;
-    }
-
-    private String parseString(ParseContext parseContext) throws InvalidSyntaxException {
+        public String toJSON(JsonStyle style) {
 
-        parseContext.index = parseContext.peekIndex; // move to "
+            StringBuilder sb = new StringBuilder();
 
-        StringBuilder sb = parseContext.parseStringStringBuilder;
-        sb.setLength(0);
+            try {
 
-        while (true) {
+                writeRoot(new AppendableOutput(sb), style);
 
-            if (parseContext.index == parseContext.chars.length) {
+            } catch (IOException ex) {
 
-                break;
+                throw new IllegalStateException(ex); // a StringBuilder never throws
             }
 
-            char c = parseContext.chars[parseContext.index++];
+            return sb.toString();
+        }
 
-            if (c == '"') {
+        public void writeTo(Appendable appendable) throws IOException {
 
-                return sb.toString();
+            writeTo(appendable, JsonStyle.Default);
+        }
 
-            } else if (c == '\\') {
+        public void writeTo(Appendable appendable, JsonStyle style) throws IOException {
 
-                if (parseContext.index == parseContext.chars.length) {
+            writeRoot(new AppendableOutput(appendable), style);
+        }
 
-                    break;
-                }
+        // writes the UTF-8 encoded JSON through an internal buffer, the stream itself is
+        // neither flushed nor closed
 
-                c = parseContext.chars[parseContext.index++];
+        public void writeTo(OutputStream outputStream) throws IOException {
 
-                if (c == '"') {
+            writeTo(outputStream, JsonStyle.Default);
+        }
 
-                    sb.append('"');
+        public void writeTo(OutputStream outputStream, JsonStyle style) throws IOException {
 
-                } else if (c == '\\') {
+            UTF8Output output = new UTF8Output(outputStream, null);
 
-                    sb.append('\\');
+            writeRoot(output, style);
+            output.flush();
+        }
 
-                } else if (c == '/') {
+        // throws a BufferOverflowException when the JSON does not fit in the remaining bytes
 
-                    sb.append('/');
+        public void writeTo(ByteBuffer buffer) {
 
-                } else if (c == 'b') {
+            writeTo(buffer, JsonStyle.Default);
+        }
 
-                    sb.append('\b');
+        public void writeTo(ByteBuffer buffer, JsonStyle style) {
 
-                } else if (c == 'f') {
+            UTF8Output output = new UTF8Output(null, buffer);
 
-                    sb.append('\f');
+            try {
 
-                } else if (c == 'n') {
+                writeRoot(output, style);
+                output.flush();
 
-                    sb.append('\n');
+            } catch (IOException ex) {
 
-                } else if (c == 'r') {
+                throw new IllegalStateException(ex); // a ByteBuffer never throws
+            }
+        }
 
-                    sb.append('\r');
+        // the entry point of toJSON and writeTo, only measures the call when an
+        // InstrumentationListener is set or a JsonSerializeEvent is being recorded
 
-                } else if (c == 't') {
+        private void writeRoot(JsonOutput output, JsonStyle style) throws IOException {
 
-                    sb.append('\t');
+            InstrumentationListener listener = instrumentationListener;
+            boolean isRecorded = EventState.isSerializeEnabled;
 
-                } else if (c == 'u') {
+            if (listener == null && !isRecorded) {
 
-                    int remainingLength = parseContext.chars.length - parseContext.index;
+                writeTo(output, style, 0);
+                return;
+            }
 
-                    if (remainingLength >= 4) {
+            long allocatedBytes = getAllocatedBytes();
+            long startTime = System.nanoTime();
+            Object event = isRecorded? JfrEvents.begin(false) : null;
 
-                        int codePoint = Integer.parseInt(new String(parseContext.chars, parseContext.index, 4), 16);
+            writeTo(output, style, 0);
 
-                        sb.append((char)codePoint);
+            long elapsedNanos = System.nanoTime() - startTime;
 
-                        parseContext.index += 4;
+            if (event != null) { JfrEvents.end(event); }
 
-                    } else {
+            reportCall(listener, event, CallStats.of(false, this, -1, output.getLength(), elapsedNanos, allocatedBytes));
+        }
 
-                        break;
+        void writeTo(JsonOutput output, JsonStyle style, int depth) throws IOException {
+
+            if (type == ElementType.Null) {
+
+                output.append("null");
+
+            } else if (type == ElementType.Boolean || type == ElementType.Number) {
+
+                output.append(value);
+
+            } else if (type == ElementType.String) {
+
+                output.append('"');
+                output.appendEscaped(value);
+                output.append('"');
+
+            } else {
+
+                boolean isObject = (type == ElementType.Object);
+                boolean isFirst = true;
+
+                output.append(isObject? '{' : '[');
+
+                for (Element element : elements) {
+
+                    if (isFirst) { isFirst = false; } else { output.append((style == JsonStyle.Default)? ", " : ","); }
+
+                    if (style == JsonStyle.Pretty) { output.appendNewLine(depth + 1); }
+
+                    if (isObject) {
+
+                        output.append('"');
+                        output.appendEscaped(element.name);
+                        output.append((style == JsonStyle.Compact)? "\":" : "\": ");
                     }
 
-                } else {
+                    element.writeTo(output, style, depth + 1);
+                }
 
-                    throw new InvalidSyntaxException("Invalid escape sequence at char " + parseContext.index);
+                if (style == JsonStyle.Pretty && !isFirst) { output.appendNewLine(depth); }
+
+                output.append(isObject? '}' : ']');
+            }
+        }
+    }
+
+    //
+    // JsonOutput
+    // The sinks used by Element.writeTo, the whole tree is written in a single pass and
+    // escape free runs of a String are copied in bulk. All of the output is ASCII since
+    // anything outside of the printable range is written as a unicode escape sequence
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private static abstract class JsonOutput {
+
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        abstract void append(char c) throws IOException;
+        abstract void append(String ascii) throws IOException;
+        abstract void appendRun(String s, int start, int end) throws IOException;
+        abstract void appendRun(char[] chars, int start, int end) throws IOException;
+
+        void appendEscaped(String s) throws IOException {
+
+            if (s == null) {
+
+                return;
+            }
+
+            int runStart = 0;
+            int length = s.length();
+
+            for (int i = 0; i < length; ++i) {
+
+                char c = s.charAt(i);
+
+                if (c >= 32 && c <= 126 && c != '"' && c != '\\') {
+
+                    continue;
+                }
+
+                if (i > runStart) { appendRun(s, runStart, i); }
+
+                runStart = i + 1;
+
+                appendEscape(c);
+            }
+
+            if (runStart < length) { appendRun(s, runStart, length); }
+        }
+
+        // the same for a region of a char array, used by FrozenElement to write its pool
+
+        void appendEscaped(char[] chars, int start, int end) throws IOException {
+
+            int runStart = start;
+
+            for (int i = start; i < end; ++i) {
+
+                char c = chars[i];
+
+                if (c >= 32 && c <= 126 && c != '"' && c != '\\') {
+
+                    continue;
                 }
 
+                if (i > runStart) { appendRun(chars, runStart, i); }
+
+                runStart = i + 1;
+
+                appendEscape(c);
+            }
+
+            if (runStart < end) { appendRun(chars, runStart, end); }
+        }
+
+        void appendEscaped(char c) throws IOException {
+
+            if (c >= 32 && c <= 126 && c != '"' && c != '\\') {
+
+                append(c);
+
             } else {
 
-                sb.append(c);
+                appendEscape(c);
             }
         }
 
-        throw new InvalidSyntaxException("Found an incomplete string at char " + parseContext.index);
-    }
+        private void appendEscape(char c) throws IOException {
+
+            if (c == '"') {
+
+                append("\\\"");
 
-    private Element parseNumberElement(ParseContext parseContext) {
+            } else if (c == '\\') {
 
-        parseContext.index = parseContext.peekIndex - 1;
+                append("\\\\");
 
-        int lastNumberCharacterIndex;
-        String numberCharacters = "0123456789-.eE";
+            } else if (c == '\b') {
 
-        for (lastNumberCharacterIndex = parseContext.index; lastNumberCharacterIndex < parseContext.chars.length; ++lastNumberCharacterIndex) {
+                append("\\b");
 
-            if (numberCharacters.indexOf(parseContext.chars[lastNumberCharacterIndex]) == -1) {
+            } else if (c == '\f') {
 
-                break;
+                append("\\f");
+
+            } else if (c == '\t') {
+
+                append("\\t");
+
+            } else if (c == '\n') {
+
+                append("\\n");
+
+            } else if (c == '\r') {
+
+                append("\\r");
+
+            } else {
+
+                append('\\');
+                append('u');
+                append(HEX_DIGITS[(c >> 12) & 0xF]);
+                append(HEX_DIGITS[(c >> 8) & 0xF]);
+                append(HEX_DIGITS[(c >> 4) & 0xF]);
+                append(HEX_DIGITS[c & 0xF]);
             }
         }
 
-        lastNumberCharacterIndex -= 1;
+        void appendLong(long number) throws IOException {
 
-        int charLength = (lastNumberCharacterIndex - parseContext.index) + 1;
+            append(Long.toString(number));
+        }
 
-        Double number = Double.parseDouble(new String(parseContext.chars, parseContext.index, charLength));
+        void appendDouble(double number) throws IOException {
 
-        parseContext.index = lastNumberCharacterIndex + 1;
+            append(formatDouble(number));
+        }
 
-        Element numberElement = new Element(ElementType.Number, "");
-        numberElement.value = number.toString();
+        void appendFloat(float number) throws IOException {
 
-        return numberElement;
-    }
+            append(formatFloat(number));
+        }
 
-    private static Token peekToken(ParseContext parseContext) {
+        void appendNewLine(int depth) throws IOException {
 
-        int peekFromIndex = parseContext.index;
-        Token peekToken = getNextToken(parseContext);
-        parseContext.peekIndex = parseContext.index; // we store the PeekIndex to make things faster in some cases
-        parseContext.index = peekFromIndex;
+            append('\n');
 
-        return peekToken;
-    }
+            for (int i = 0; i < depth; ++i) {
 
-    private static Token getNextToken(ParseContext parseContext) {
+                append("  ");
+            }
+        }
 
-        skipWhitespace(parseContext);
+        // the number of characters (and bytes) written so far, or -1 when the sink
+        // cannot tell, only used for the CallStats of an instrumented call
 
-        if (parseContext.index == parseContext.chars.length) {
+        long getLength() {
 
-            return Token.EndOrUnknown;
+            return -1;
         }
+    }
 
-        char c = parseContext.chars[parseContext.index++];
+    private static class AppendableOutput extends JsonOutput {
 
-        if (c == '{') {
+        private final Appendable appendable;
+        private final int startLength;
+        private final byte[] numberBuffer = new byte[32];	// doubles and floats are formatted here
 
-            return Token.ObjectStart;
+        public AppendableOutput(Appendable appendable) {
 
-        } else if (c == '}') {
+            this.appendable = appendable;
+            this.startLength = (appendable instanceof CharSequence)? ((CharSequence)appendable).length() : -1;
+        }
 
-            return Token.ObjectEnd;
+        @Override
+        void append(char c) throws IOException {
 
-        } else if (c == '[') {
+            appendable.append(c);
+        }
 
-            return Token.ArrayStart;
+        @Override
+        void append(String ascii) throws IOException {
 
-        } else if (c == ']') {
+            appendable.append(ascii);
+        }
 
-            return Token.ArrayEnd;
+        @Override
+        void appendRun(String s, int start, int end) throws IOException {
 
-        } else if (c == ':') {
+            appendable.append(s, start, end);
+        }
 
-            return Token.Colon;
+        @Override
+        void appendRun(char[] chars, int start, int end) throws IOException {
 
-        } else if (c == ',') {
+            if (appendable instanceof StringBuilder) {
 
-            return Token.Comma;
+                ((StringBuilder)appendable).append(chars, start, end - start);
 
-        } else if (c == '"') {
+            } else {
+
+                appendable.append(CharBuffer.wrap(chars, start, end - start));
+            }
+        }
 
-            return Token.String;
+        @Override
+        void appendLong(long number) throws IOException {
 
-        } else if ("-0123456789".indexOf(c) != -1) {
+            if (appendable instanceof StringBuilder) {
 
-            return Token.Number;
+                ((StringBuilder)appendable).append(number);
+
+            } else {
+
+                appendable.append(Long.toString(number));
+            }
         }
 
-        parseContext.index--;
+        @Override
+        void appendDouble(double number) throws IOException {
 
-        if (forwardMatch("false", parseContext)) {
+            appendNumberBuffer(formatDouble(number, numberBuffer, 0));
+        }
 
-            return Token.False;
+        @Override
+        void appendFloat(float number) throws IOException {
 
-        } else if (forwardMatch("true", parseContext)) {
+            appendNumberBuffer(formatFloat(number, numberBuffer, 0));
+        }
 
-            return Token.True;
+        private void appendNumberBuffer(int length) throws IOException {
 
-        } else if (forwardMatch("null", parseContext)) {
+            for (int i = 0; i < length; ++i) {
 
-            return Token.Null;
+                appendable.append((char)numberBuffer[i]);
+            }
+        }
 
-        } else {
+        @Override
+        long getLength() {
 
-            return Token.EndOrUnknown;
+            return (startLength < 0)? -1 : ((CharSequence)appendable).length() - startLength;
         }
     }
 
-    private static Boolean forwardMatch(String what, ParseContext parseContext) {
+    private static class UTF8Output extends JsonOutput {
 
-        int remainingLength = parseContext.chars.length - parseContext.index;
+        private final OutputStream outputStream;
+        private final ByteBuffer byteBuffer;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private long flushedLength;
 
-        if (remainingLength >= what.length()) {
+        public UTF8Output(OutputStream outputStream, ByteBuffer byteBuffer) {
 
-            for (int i = 0; i < what.length(); ++i) {
+            this.outputStream = outputStream;
+            this.byteBuffer = byteBuffer;
+        }
 
-                if (parseContext.chars[parseContext.index + i] != what.charAt(i)) {
+        @Override
+        void append(char c) throws IOException {
 
-                    return false;
+            if (position == buffer.length) { flush(); }
+
+            buffer[position++] = (byte)c;
+        }
+
+        @Override
+        void append(String ascii) throws IOException {
+
+            if (ascii == null) { ascii = "null"; }
+
+            appendRun(ascii, 0, ascii.length());
+        }
+
+        @Override
+        void appendRun(String s, int start, int end) throws IOException {
+
+            while (start < end) {
+
+                if (position == buffer.length) { flush(); }
+
+                int runEnd = Math.min(end, start + buffer.length - position);
+
+                for (int i = start; i < runEnd; ++i) {
+
+                    buffer[position++] = (byte)s.charAt(i);
                 }
+
+                start = runEnd;
             }
+        }
 
-            parseContext.index += what.length();
-            return true;
+        @Override
+        void appendRun(char[] chars, int start, int end) throws IOException {
+
+            while (start < end) {
+
+                if (position == buffer.length) { flush(); }
+
+                int runEnd = Math.min(end, start + buffer.length - position);
+
+                for (int i = start; i < runEnd; ++i) {
+
+                    buffer[position++] = (byte)chars[i];
+                }
+
+                start = runEnd;
+            }
         }
 
-        return false;
-    }
+        // the digits are written straight into the buffer, back to front
 
-    private static void skipWhitespace(ParseContext parseContext) {
+        @Override
+        void appendLong(long number) throws IOException {
 
-        while (parseContext.index < parseContext.chars.length) {
+            if (number == Long.MIN_VALUE) {
 
-            char c = parseContext.chars[parseContext.index];
+                append("-9223372036854775808");
+                return;
+            }
 
-            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+            if (buffer.length - position < 20) { flush(); }
 
-                break;
+            if (number < 0) {
+
+                buffer[position++] = '-';
+                number = -number;
             }
 
-            parseContext.index++;
+            int digits = 1;
+
+            for (long n = number; n >= 10; n /= 10) {
+
+                digits++;
+            }
+
+            position += digits;
+
+            for (int i = position - 1; i >= position - digits; --i) {
+
+                buffer[i] = (byte)('0' + number % 10);
+                number /= 10;
+            }
+        }
+
+        @Override
+        void appendDouble(double number) throws IOException {
+
+            if (buffer.length - position < 32) { flush(); }
+
+            position = formatDouble(number, buffer, position);
+        }
+
+        @Override
+        void appendFloat(float number) throws IOException {
+
+            if (buffer.length - position < 32) { flush(); }
+
+            position = formatFloat(number, buffer, position);
+        }
+
+        void flush() throws IOException {
+
+            if (outputStream != null) {
+
+                outputStream.write(buffer, 0, position);
+
+            } else {
+
+                byteBuffer.put(buffer, 0, position);
+            }
+
+            flushedLength += position;
+            position = 0;
+        }
+
+        @Override
+        long getLength() {
+
+            return flushedLength + position;
         }
     }
 
-    private static String encodeStringValue(String s) {
+    //
+    // FrozenElement
+    // An immutable, thread safe view of a frozen document (see Element.freeze() and
+    // parseFrozen()) with the same read API as Element. The document is stored as a few
+    // primitive arrays (one entry per node, the children of a container are contiguous)
+    // plus one char pool that holds all values, names are kept once per distinct name.
+    // Wide Objects share one hash table that maps (Object, name) to the attribute
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class FrozenDocument {
+
+        final byte[] types;							// ElementType ordinal
+        final int[] nameIds;						// index into names, -1 for Array items and the root
+        final int[] firstOrOffset;					// first child of a container, pool offset of a value
+        final int[] countOrLength;					// child count of a container, length of a value (-1 for null)
+        final char[] pool;
+        final String[] names;
+        final HashMap<String, Integer> nameIdsByName;
+        final int[] attributeSlots;					// the attributes of wide Objects + 1, 0 for an empty slot
+        final String[] values;						// the values decoded by getValue so far
+
+        private FrozenDocument(byte[] types, int[] nameIds, int[] firstOrOffset, int[] countOrLength, char[] pool, HashMap<String, Integer> nameIdsByName) {
+
+            this.types = types;
+            this.nameIds = nameIds;
+            this.firstOrOffset = firstOrOffset;
+            this.countOrLength = countOrLength;
+            this.pool = pool;
+            this.names = new String[nameIdsByName.size()];
+            this.nameIdsByName = nameIdsByName;
+            this.values = new String[types.length];
+
+            for (Map.Entry<String, Integer> entry : nameIdsByName.entrySet()) {
+
+                names[entry.getValue()] = entry.getKey();
+            }
 
-        if (s == null || s == "") { return ""; }
+            this.attributeSlots = createAttributeSlots();
+        }
 
-        char[] chars = s.toCharArray();
-        StringBuilder sb = new StringBuilder();
+        static FrozenDocument freeze(Element rootElement) {
 
-        for (char c : chars) {
+            ArrayList<Element> nodes = new ArrayList<Element>();
+            nodes.add(rootElement);
 
-            if (c == '"') {
+            // breadth first so that the children of every container end up next to each other
 
-                sb.append("\\\"");
+            for (int i = 0; i < nodes.size(); ++i) {
 
-            } else if (c == '\\') {
+                List<Element> children = getChildren(nodes.get(i));
 
-                sb.append("\\\\");
+                if (children != null) {
 
-            } else if (c == '\b') {
+                    nodes.addAll(children);
+                }
+            }
 
-                sb.append("\\b");
+            int count = nodes.size();
+            byte[] types = new byte[count];
+            int[] nameIds = new int[count];
+            int[] firstOrOffset = new int[count];
+            int[] countOrLength = new int[count];
+            StringBuilder pool = new StringBuilder();
+            HashMap<String, Integer> nameIdsByName = new HashMap<String, Integer>();
+            int nextChild = 1;
 
-            } else if (c == '\f') {
+            for (int i = 0; i < count; ++i) {
 
-                sb.append("\\f");
+                Element element = nodes.get(i);
+                String name = (i == 0)? null : element.name;
 
-            } else if (c == '\t') {
+                if (element instanceof LazyElement) {
 
-                sb.append("\\t");
+                    ((LazyElement)element).resolveValue(); // the value field is only set once it is resolved
+                }
 
-            } else if (c == '\n') {
+                types[i] = (byte)element.type.ordinal();
+                nameIds[i] = -1;
 
-                sb.append("\\n");
+                if (name != null) {
 
-            } else if (c == '\r') {
+                    Integer nameId = nameIdsByName.get(name);
 
-                sb.append("\\r");
+                    if (nameId == null) {
 
-            } else if (c >= 32 && c <= 126) {
+                        nameId = nameIdsByName.size();
+                        nameIdsByName.put(name, nameId);
+                    }
 
-                sb.append(c);
+                    nameIds[i] = nameId;
+                }
 
-            } else {
+                List<Element> children = getChildren(element);
+
+                if (children != null) {
+
+                    firstOrOffset[i] = nextChild;
+                    countOrLength[i] = children.size();
+                    nextChild += children.size();
+
+                } else if (element.value == null) {
+
+                    countOrLength[i] = -1;
+
+                } else {
+
+                    firstOrOffset[i] = pool.length();
+                    countOrLength[i] = element.value.length();
+                    pool.append(element.value);
+                }
+            }
+
+            char[] chars = new char[pool.length()];
+            pool.getChars(0, chars.length, chars, 0);
+
+            return new FrozenDocument(types, nameIds, firstOrOffset, countOrLength, chars, nameIdsByName);
+        }
+
+        // the attribute of the Object at node with the given name, -1 if there is none
+
+        int findAttribute(int node, String name) {
 
-                String hex = Integer.toHexString(c);
+            Integer id = nameIdsByName.get(name);
 
-                sb.append("\\u");
+            if (id == null) {
 
-                for (int i = hex.length(); i < 4; ++i) {
+                return -1;
+            }
+
+            int nameId = id;
+            int first = firstOrOffset[node];
+            int end = first + countOrLength[node];
+
+            if (end - first < ATTRIBUTE_INDEX_THRESHOLD) {
+
+                for (int child = first; child < end; ++child) {
 
-                    sb.append("0");
+                    if (nameIds[child] == nameId) {
+
+                        return child;
+                    }
                 }
 
-                sb.append(hex);
+                return -1;
+            }
+
+            int mask = attributeSlots.length - 1;
+
+            for (int slot = spreadHash(node * 31 + nameId) & mask; ; slot = (slot + 1) & mask) {
+
+                int child = attributeSlots[slot] - 1;
+
+                if (child == -1) {
+
+                    return -1;
+
+                } else if (child >= first && child < end && nameIds[child] == nameId) {
+
+                    return child;
+                }
             }
         }
 
-        return sb.toString();
+        String getValue(int node) {
+
+            String value = values[node];
+
+            if (value == null) {
+
+                // racing threads decode the same String, either one may end up cached
+
+                value = new String(pool, firstOrOffset[node], countOrLength[node]);
+                values[node] = value;
+            }
+
+            return value;
+        }
+
+        // the arrays plus their headers, the names and the document itself
+
+        long getEstimatedSize() {
+
+            long namesSize = 0;
+
+            for (String name : names) {
+
+                namesSize += 96 + 2L * name.length(); // the String, its chars and the HashMap entry
+            }
+
+            return 10 * 16 + 17L * types.length + 2L * pool.length + 4L * attributeSlots.length + namesSize;
+        }
+
+        private int[] createAttributeSlots() {
+
+            int indexedCount = 0;
+
+            for (int node = 0; node < types.length; ++node) {
+
+                if (types[node] == ElementType.Object.ordinal() && countOrLength[node] >= ATTRIBUTE_INDEX_THRESHOLD) {
+
+                    indexedCount += countOrLength[node];
+                }
+            }
+
+            if (indexedCount == 0) {
+
+                return new int[1];
+            }
+
+            int[] slots = new int[Integer.highestOneBit(indexedCount * 2 - 1) << 1];
+            int mask = slots.length - 1;
+
+            for (int node = 0; node < types.length; ++node) {
+
+                if (types[node] != ElementType.Object.ordinal() || countOrLength[node] < ATTRIBUTE_INDEX_THRESHOLD) {
+
+                    continue;
+                }
+
+                int first = firstOrOffset[node];
+                int end = first + countOrLength[node];
+
+                for (int child = first; child < end; ++child) {
+
+                    for (int slot = spreadHash(node * 31 + nameIds[child]) & mask; ; slot = (slot + 1) & mask) {
+
+                        int existingChild = slots[slot] - 1;
+
+                        if (existingChild == -1) {
+
+                            slots[slot] = child + 1;
+                            break;
+
+                        } else if (existingChild >= first && nameIds[existingChild] == nameIds[child]) {
+
+                            break; // duplicate names resolve to the first attribute, just like the linear scan
+                        }
+                    }
+                }
+            }
+
+            return slots;
+        }
+
+        private static List<Element> getChildren(Element element) {
+
+            if (element.type == ElementType.Object) {
+
+                return element.getAttributes();
+
+            } else if (element.type == ElementType.Array) {
+
+                return element.getItems();
+            }
+
+            return null;
+        }
+    }
+
+    public static final class FrozenElement {
+
+        private static final ElementType[] ELEMENT_TYPES = ElementType.values();
+
+        private final FrozenDocument document;
+        private final int node;
+
+        private FrozenElement(FrozenDocument document, int node) {
+
+            this.document = document;
+            this.node = node;
+        }
+
+        public ElementType getType() {
+
+            return ELEMENT_TYPES[document.types[node]];
+        }
+
+        public String getName() {
+
+            int nameId = document.nameIds[node];
+
+            return (nameId == -1)? null : document.names[nameId];
+        }
+
+        // String, Number, true, false, null as a String, "" for containers just like Element
+
+        public String getValue() {
+
+            if (isContainer()) {
+
+                return "";
+            }
+
+            return (document.countOrLength[node] == -1)? null : document.getValue(node);
+        }
+
+        public FrozenElement getAttribute(String name) {
+
+            if (getType() != ElementType.Object || name == null) {
+
+                return null;
+            }
+
+            int child = document.findAttribute(node, name);
+
+            return (child == -1)? null : new FrozenElement(document, child);
+        }
+
+        public List<FrozenElement> getAttributes() {
+
+            return (getType() == ElementType.Object)? getChildren() : null;
+        }
+
+        public List<FrozenElement> getItems() {
+
+            return (getType() == ElementType.Array)? getChildren() : null;
+        }
+
+        public String getAttributeAsString(String name) {
+
+            return getAttributeAsString(name, "");
+        }
+
+        public String getAttributeAsString(String name, String defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            return attribute.getValue();
+        }
+
+        public Boolean getAttributeAsBoolean(String name) {
+
+            return getAttributeAsBoolean(name, false);
+        }
+
+        public Boolean getAttributeAsBoolean(String name, Boolean defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            return Boolean.parseBoolean(attribute.getValue());
+        }
+
+        public Integer getAttributeAsInt(String name) {
+
+            return getAttributeAsInt(name, 0);
+        }
+
+        public Integer getAttributeAsInt(String name, int defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            long number = attribute.getValueAsLong(defaultValue);
+
+            return (number == (int)number)? (int)number : defaultValue;
+        }
+
+        public long getAttributeAsLong(String name) {
+
+            return getAttributeAsLong(name, 0);
+        }
+
+        public long getAttributeAsLong(String name, long defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            return attribute.getValueAsLong(defaultValue);
+        }
+
+        public Float getAttributeAsFloat(String name) {
+
+            return getAttributeAsFloat(name, 0.f);
+        }
+
+        public Float getAttributeAsFloat(String name, Float defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            try {
+
+                return Float.parseFloat(attribute.getValue());
+
+            } catch (NumberFormatException ex) {
+
+                return defaultValue;
+            }
+        }
+
+        public Double getAttributeAsDouble(String name) {
+
+            return getAttributeAsDouble(name, 0.0);
+        }
+
+        public Double getAttributeAsDouble(String name, Double defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            double number = attribute.getValueAsDouble(Double.NaN);
+
+            return Double.isNaN(number)? defaultValue : number;
+        }
+
+        public BigDecimal getAttributeAsBigDecimal(String name) {
+
+            return getAttributeAsBigDecimal(name, BigDecimal.ZERO);
+        }
+
+        public BigDecimal getAttributeAsBigDecimal(String name, BigDecimal defaultValue) {
+
+            FrozenElement attribute = getAttribute(name);
+
+            if (attribute == null || attribute.isNullValue()) {
+
+                return defaultValue;
+            }
+
+            try {
+
+                return new BigDecimal(document.pool, document.firstOrOffset[attribute.node], document.countOrLength[attribute.node]);
+
+            } catch (NumberFormatException ex) {
+
+                return defaultValue;
+            }
+        }
+
+        // integers are decoded straight from the pool, anything else goes through a String
+
+        public long getValueAsLong(long defaultValue) {
+
+            if (isContainer() || isNullValue()) {
+
+                return defaultValue;
+            }
+
+            char[] pool = document.pool;
+            int offset = document.firstOrOffset[node];
+            int end = offset + document.countOrLength[node];
+            int i = offset;
+            boolean isNegative = (i < end && pool[i] == '-');
+
+            if (isNegative) { i++; }
+
+            long negativeValue = 0;
+            int digitsStart = i;
+
+            for (; i < end && pool[i] >= '0' && pool[i] <= '9'; ++i) {
+
+                int digit = pool[i] - '0';
+
+                if (negativeValue < (Long.MIN_VALUE + digit) / 10) {
+
+                    break;
+                }
+
+                negativeValue = negativeValue * 10 - digit;
+            }
+
+            if (i == end && i > digitsStart && (isNegative || negativeValue != Long.MIN_VALUE)) {
+
+                return isNegative? negativeValue : -negativeValue;
+            }
+
+            if (getType() != ElementType.Number) {
+
+                return defaultValue;
+            }
+
+            return doubleToLong(getValueAsDouble(Double.NaN), defaultValue);
+        }
+
+        public double getValueAsDouble(double defaultValue) {
+
+            if (isContainer() || isNullValue()) {
+
+                return defaultValue;
+            }
+
+            try {
+
+                return parseDouble(getValue());
+
+            } catch (NumberFormatException ex) {
+
+                return defaultValue;
+            }
+        }
+
+        public String toJSON() {
+
+            return toJSON(JsonStyle.Default);
+        }
+
+        // written straight from the arrays of the document, without thawing it first
+
+        public String toJSON(JsonStyle style) {
+
+            StringBuilder sb = new StringBuilder();
+            AppendableOutput output = new AppendableOutput(sb);
+
+            try {
+
+                InstrumentationListener listener = instrumentationListener;
+                boolean isRecorded = EventState.isSerializeEnabled;
+
+                if (listener == null && !isRecorded) {
+
+                    writeTo(output, style, node, 0);
+
+                } else {
+
+                    long allocatedBytes = getAllocatedBytes();
+                    long startTime = System.nanoTime();
+                    Object event = isRecorded? JfrEvents.begin(false) : null;
+
+                    writeTo(output, style, node, 0);
+
+                    long elapsedNanos = System.nanoTime() - startTime;
+
+                    if (event != null) { JfrEvents.end(event); }
+
+                    reportCall(listener, event, CallStats.of(document, node, output.getLength(), elapsedNanos, allocatedBytes));
+                }
+
+            } catch (IOException ex) {
+
+                throw new IllegalStateException(ex); // a StringBuilder never throws
+            }
+
+            return sb.toString();
+        }
+
+        private void writeTo(JsonOutput output, JsonStyle style, int node, int depth) throws IOException {
+
+            FrozenDocument document = this.document;
+            ElementType type = ELEMENT_TYPES[document.types[node]];
+            int offset = document.firstOrOffset[node];
+            int length = document.countOrLength[node];
+
+            if (type == ElementType.Null) {
+
+                output.append("null");
+
+            } else if (type == ElementType.Boolean || type == ElementType.Number) {
+
+                if (length == -1) { output.append("null"); } else { output.appendRun(document.pool, offset, offset + length); }
+
+            } else if (type == ElementType.String) {
+
+                output.append('"');
+
+                if (length != -1) { output.appendEscaped(document.pool, offset, offset + length); }
+
+                output.append('"');
+
+            } else {
+
+                boolean isObject = (type == ElementType.Object);
+
+                output.append(isObject? '{' : '[');
+
+                for (int child = offset; child < offset + length; ++child) {
+
+                    if (child > offset) { output.append((style == JsonStyle.Default)? ", " : ","); }
+
+                    if (style == JsonStyle.Pretty) { output.appendNewLine(depth + 1); }
+
+                    if (isObject) {
+
+                        int nameId = document.nameIds[child];
+
+                        output.append('"');
+                        output.appendEscaped((nameId == -1)? null : document.names[nameId]);
+                        output.append((style == JsonStyle.Compact)? "\":" : "\": ");
+                    }
+
+                    writeTo(output, style, child, depth + 1);
+                }
+
+                if (style == JsonStyle.Pretty && length > 0) { output.appendNewLine(depth); }
+
+                output.append(isObject? '}' : ']');
+            }
+        }
+
+        // creates a regular (mutable) Element tree with the same content
+
+        public Element thaw() {
+
+            Element element = new Element(getType(), getValue());
+            element.name = getName();
+
+            if (isContainer()) {
+
+                element.elements = (getType() == ElementType.Object)? new AttributeList(document.countOrLength[node]) : new ArrayList<Element>(document.countOrLength[node]);
+
+                for (FrozenElement child : getChildren()) {
+
+                    element.elements.add(child.thaw());
+                }
+            }
+
+            return element;
+        }
+
+        private boolean isContainer() {
+
+            ElementType type = getType();
+
+            return type == ElementType.Object || type == ElementType.Array;
+        }
+
+        private boolean isNullValue() {
+
+            return !isContainer() && document.countOrLength[node] == -1;
+        }
+
+        private List<FrozenElement> getChildren() {
+
+            int first = document.firstOrOffset[node];
+            int count = document.countOrLength[node];
+            List<FrozenElement> children = new ArrayList<FrozenElement>(count);
+
+            for (int i = 0; i < count; ++i) {
+
+                children.add(new FrozenElement(document, first + i));
+            }
+
+            return Collections.unmodifiableList(children);
+        }
+    }
+
+    //
+    // JsonReader
+    // A pull parser that reads one token at a time from a Reader or InputStream through
+    // a fixed size buffer, so memory stays flat no matter how large the input is. Only
+    // the current nesting (one int per level) and the current String or Number are kept.
+    // The input holds a single top level value, anything but whitespace after it fails
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public class JsonReader implements Closeable {
+
+        private static final int EMPTY_DOCUMENT = 0;
+        private static final int NONEMPTY_DOCUMENT = 1;
+        private static final int EMPTY_OBJECT = 2;
+        private static final int DANGLING_NAME = 3;
+        private static final int NONEMPTY_OBJECT = 4;
+        private static final int EMPTY_ARRAY = 5;
+        private static final int NONEMPTY_ARRAY = 6;
+
+        private final Reader reader;
+        private final char[] buffer;
+        private int position;
+        private int limit;
+        private long bufferOffset;					// absolute position of buffer[0] in the input
+
+        private int[] stack;
+        private int stackSize;
+
+        private Token peekedToken;
+        private boolean peekedIsName;
+        private String tokenValue;					// the String or Number read by the last nextToken()
+        private final StringBuilder sb;
+
+        public JsonReader(InputStream inputStream) {
+
+            this(new InputStreamReader(inputStream, StandardCharsets.UTF_8), 8192);
+        }
+
+        public JsonReader(Reader reader) {
+
+            this(reader, 8192);
+        }
+
+        public JsonReader(Reader reader, int bufferSize) {
+
+            if (bufferSize < 16) { throw new IllegalArgumentException("The buffer size must be at least 16 chars"); }
+
+            this.reader = reader;
+            this.buffer = new char[bufferSize];
+            this.stack = new int[32];
+            this.stack[stackSize++] = EMPTY_DOCUMENT;
+            this.sb = new StringBuilder();
+        }
+
+        public Token peek() throws IOException, InvalidSyntaxException {
+
+            if (peekedToken != null) {
+
+                return peekedToken;
+            }
+
+            peekedIsName = false;
+
+            int state = stack[stackSize - 1];
+            int c;
+
+            if (state == EMPTY_ARRAY || state == NONEMPTY_ARRAY) {
+
+                c = nextNonWhitespace();
+
+                if (c == ']') {
+
+                    return peekedToken = Token.ArrayEnd;
+
+                } else if (state == NONEMPTY_ARRAY) {
+
+                    if (c != ',') { throw syntaxError("Expected a Comma or ArrayEnd"); }
+
+                    c = nextNonWhitespace();
+                }
+
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+
+            } else if (state == EMPTY_OBJECT || state == NONEMPTY_OBJECT) {
+
+                c = nextNonWhitespace();
+
+                if (c == '}') {
+
+                    return peekedToken = Token.ObjectEnd;
+
+                } else if (state == NONEMPTY_OBJECT) {
+
+                    if (c != ',') { throw syntaxError("Expected a Comma or ObjectEnd"); }
+
+                    c = nextNonWhitespace();
+                }
+
+                if (c != '"') { throw syntaxError("Expected an attribute name"); }
+
+                stack[stackSize - 1] = DANGLING_NAME;
+                peekedIsName = true;
+
+                return peekedToken = Token.String;
+
+            } else if (state == DANGLING_NAME) {
+
+                if (nextNonWhitespace() != ':') { throw syntaxError("Expected a Colon before the attribute value"); }
+
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                c = nextNonWhitespace();
+
+            } else {
+
+                c = nextNonWhitespace();
+
+                if (c == -1) {
+
+                    return peekedToken = Token.EndOrUnknown;
+
+                } else if (state == NONEMPTY_DOCUMENT) {
+
+                    position--;
+                    throw syntaxError("Unexpected data after the top level value");
+                }
+
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+            }
+
+            return peekedToken = readValueToken(c);
+        }
+
+        public Token nextToken() throws IOException, InvalidSyntaxException {
+
+            Token token = consumeToken();
+
+            if (token == Token.String) {
+
+                tokenValue = readString();
+            }
+
+            return token;
+        }
+
+        public String getTokenValue() {
+
+            return tokenValue;
+        }
+
+        public boolean hasNext() throws IOException, InvalidSyntaxException {
+
+            Token token = peek();
+
+            return token != Token.ObjectEnd && token != Token.ArrayEnd && token != Token.EndOrUnknown;
+        }
+
+        public void beginObject() throws IOException, InvalidSyntaxException {
+
+            expect(Token.ObjectStart);
+        }
+
+        public void endObject() throws IOException, InvalidSyntaxException {
+
+            expect(Token.ObjectEnd);
+        }
+
+        public void beginArray() throws IOException, InvalidSyntaxException {
+
+            expect(Token.ArrayStart);
+        }
+
+        public void endArray() throws IOException, InvalidSyntaxException {
+
+            expect(Token.ArrayEnd);
+        }
+
+        public String nextName() throws IOException, InvalidSyntaxException {
+
+            if (peek() != Token.String || !peekedIsName) { throw syntaxError("Expected an attribute name but found " + peekedToken); }
+
+            nextToken();
+
+            return tokenValue;
+        }
+
+        public String nextString() throws IOException, InvalidSyntaxException {
+
+            Token token = peek();
+
+            if ((token != Token.String && token != Token.Number) || peekedIsName) { throw syntaxError("Expected a String but found " + token); }
+
+            nextToken();
+
+            return tokenValue;
+        }
+
+        public boolean nextBoolean() throws IOException, InvalidSyntaxException {
+
+            Token token = nextToken();
+
+            if (token == Token.True) {
+
+                return true;
+
+            } else if (token == Token.False) {
+
+                return false;
+            }
+
+            throw syntaxError("Expected a Boolean but found " + token);
+        }
+
+        public void nextNull() throws IOException, InvalidSyntaxException {
+
+            expect(Token.Null);
+        }
+
+        public long nextLong() throws IOException, InvalidSyntaxException {
+
+            expect(Token.Number);
+
+            try {
+
+                return Long.parseLong(tokenValue);
+
+            } catch (NumberFormatException ex) {
+
+                // a plain integer only gets here when it overflows, a fraction or an exponent
+                // has to be integral and inside the range (the cast would saturate)
+
+                if (tokenValue.indexOf('.') == -1 && tokenValue.indexOf('e') == -1 && tokenValue.indexOf('E') == -1) {
+
+                    throw syntaxError("Expected a long but found " + tokenValue);
+                }
+
+                double number = parseDouble(tokenValue);
+
+                if (number != Math.rint(number) || number >= 0x1p63 || number < -0x1p63) { throw syntaxError("Expected a long but found " + tokenValue); }
+
+                return (long)number;
+            }
+        }
+
+        public int nextInt() throws IOException, InvalidSyntaxException {
+
+            long number = nextLong();
+
+            if (number != (int)number) { throw syntaxError("Expected an int but found " + tokenValue); }
+
+            return (int)number;
+        }
+
+        public double nextDouble() throws IOException, InvalidSyntaxException {
+
+            expect(Token.Number);
+
+            return parseDouble(tokenValue);
+        }
+
+        // skips the next value including all of its children without building any Strings
+
+        public void skipValue() throws IOException, InvalidSyntaxException {
+
+            int depth = 0;
+
+            do {
+
+                Token token = peek();
+
+                if (token == Token.EndOrUnknown) {
+
+                    throw syntaxError("Unexpected end of input");
+
+                } else if (token == Token.String && peekedIsName) {
+
+                    consumeToken();
+                    skipString();
+                    continue;
+                }
+
+                consumeToken();
+
+                if (token == Token.ObjectStart || token == Token.ArrayStart) {
+
+                    depth++;
+
+                } else if (token == Token.ObjectEnd || token == Token.ArrayEnd) {
+
+                    depth--;
+
+                } else if (token == Token.String) {
+
+                    skipString();
+                }
+
+            } while (depth > 0);
+        }
+
+        // reads the next value as a complete Element subtree, useful to stream the items
+        // of a huge top level Array one at a time
+
+        public Element readElement() throws IOException, InvalidSyntaxException {
+
+            Token token = nextToken();
+
+            if (token == Token.ObjectStart) {
+
+                Element objectElement = new Element(ElementType.Object, "");
+                objectElement.elements = new AttributeList();
+
+                while (hasNext()) {
+
+                    String attributeName = nextName();
+
+                    Element attributeElement = readElement();
+                    attributeElement.name = attributeName;
+
+                    objectElement.elements.add(attributeElement);
+                }
+
+                endObject();
+
+                return objectElement;
+
+            } else if (token == Token.ArrayStart) {
+
+                Element arrayElement = new Element(ElementType.Array, "");
+                arrayElement.elements = new ArrayList<Element>();
+
+                while (hasNext()) {
+
+                    arrayElement.elements.add(readElement());
+                }
+
+                endArray();
+
+                return arrayElement;
+
+            } else if (token == Token.String) {
+
+                return new Element(ElementType.String, tokenValue);
+
+            } else if (token == Token.Number) {
+
+                return createNumberElement(tokenValue, getPosition());
+
+            } else if (token == Token.True) {
+
+                return new Element(ElementType.Boolean, "true");
+
+            } else if (token == Token.False) {
+
+                return new Element(ElementType.Boolean, "false");
+
+            } else if (token == Token.Null) {
+
+                return new Element(ElementType.Null, "null");
+            }
+
+            throw syntaxError("Unexpected token (" + token + ")");
+        }
+
+        public long getPosition() {
+
+            return bufferOffset + position;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            reader.close();
+        }
+
+        private Token consumeToken() throws IOException, InvalidSyntaxException {
+
+            Token token = peek();
+            peekedToken = null;
+
+            if (token == Token.ObjectStart) {
+
+                push(EMPTY_OBJECT);
+
+            } else if (token == Token.ArrayStart) {
+
+                push(EMPTY_ARRAY);
+
+            } else if (token == Token.ObjectEnd || token == Token.ArrayEnd) {
+
+                stackSize--;
+            }
+
+            return token;
+        }
+
+        private void expect(Token expectedToken) throws IOException, InvalidSyntaxException {
+
+            Token token = peek();
+
+            if (token != expectedToken || peekedIsName) { throw syntaxError("Expected " + expectedToken + " but found " + token); }
+
+            nextToken();
+        }
+
+        private void push(int state) throws InvalidSyntaxException {
+
+            if (stackSize > maxDepth) { throw syntaxError("Maximum nesting depth (" + maxDepth + ") exceeded"); }
+
+            if (stackSize == stack.length) {
+
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+
+            stack[stackSize++] = state;
+        }
+
+        private Token readValueToken(int c) throws IOException, InvalidSyntaxException {
+
+            if (c == '{') {
+
+                return Token.ObjectStart;
+
+            } else if (c == '[') {
+
+                return Token.ArrayStart;
+
+            } else if (c == '"') {
+
+                return Token.String; // the String itself is read by nextToken() or skipped by skipValue()
+
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+
+                tokenValue = readNumber((char)c);
+                return Token.Number;
+
+            } else if (c == 't' && forwardMatch("rue")) {
+
+                return Token.True;
+
+            } else if (c == 'f' && forwardMatch("alse")) {
+
+                return Token.False;
+
+            } else if (c == 'n' && forwardMatch("ull")) {
+
+                return Token.Null;
+            }
+
+            position--;
+
+            throw syntaxError("Unexpected character");
+        }
+
+        private String readString() throws IOException, InvalidSyntaxException {
+
+            sb.setLength(0);
+
+            while (true) {
+
+                int start = position;
+
+                while (position < limit) {
+
+                    char c = buffer[position++];
+
+                    if (c == '"') {
+
+                        if (sb.length() == 0) {
+
+                            return new String(buffer, start, position - start - 1);
+                        }
+
+                        sb.append(buffer, start, position - start - 1);
+                        return sb.toString();
+
+                    } else if (c == '\\') {
+
+                        sb.append(buffer, start, position - start - 1);
+                        readEscapeSequence();
+                        start = position;
+                    }
+                }
+
+                sb.append(buffer, start, position - start);
+
+                if (!fill(1)) { throw syntaxError("Found an incomplete string"); }
+            }
+        }
+
+        private void skipString() throws IOException, InvalidSyntaxException {
+
+            while (position < limit || fill(1)) {
+
+                char c = buffer[position++];
+
+                if (c == '"') {
+
+                    return;
+
+                } else if (c == '\\') {
+
+                    if (!fill(1)) { break; }
+
+                    position++;
+                }
+            }
+
+            throw syntaxError("Found an incomplete string");
+        }
+
+        private void readEscapeSequence() throws IOException, InvalidSyntaxException {
+
+            if (!fill(1)) { throw syntaxError("Found an incomplete string"); }
+
+            char c = buffer[position++];
+
+            if (c == '"' || c == '\\' || c == '/') {
+
+                sb.append(c);
+
+            } else if (c == 'b') {
+
+                sb.append('\b');
+
+            } else if (c == 'f') {
+
+                sb.append('\f');
+
+            } else if (c == 'n') {
+
+                sb.append('\n');
+
+            } else if (c == 'r') {
+
+                sb.append('\r');
+
+            } else if (c == 't') {
+
+                sb.append('\t');
+
+            } else if (c == 'u') {
+
+                if (!fill(4)) { throw syntaxError("Found an incomplete string"); }
+
+                int codePoint = 0;
+
+                for (int i = 0; i < 4; ++i) {
+
+                    int digit = Character.digit(buffer[position++], 16);
+
+                    if (digit == -1) { throw syntaxError("Invalid unicode escape sequence"); }
+
+                    codePoint = (codePoint << 4) | digit;
+                }
+
+                sb.append((char)codePoint);
+
+            } else {
+
+                throw syntaxError("Invalid escape sequence");
+            }
+        }
+
+        private String readNumber(char firstChar) throws IOException, InvalidSyntaxException {
+
+            long start = getPosition() - 1;
+
+            sb.setLength(0);
+            sb.append(firstChar);
+
+            while (position < limit || fill(1)) {
+
+                char c = buffer[position];
+
+                if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+
+                    break;
+                }
+
+                sb.append(c);
+                position++;
+            }
+
+            String number = sb.toString();
+
+            if (!isValidNumber(number)) { throw new InvalidSyntaxException("Invalid number (" + number + ") at char " + start); }
+
+            return number;
+        }
+
+        private boolean forwardMatch(String what) throws IOException {
+
+            if (!fill(what.length())) {
+
+                return false;
+            }
+
+            for (int i = 0; i < what.length(); ++i) {
+
+                if (buffer[position + i] != what.charAt(i)) {
+
+                    return false;
+                }
+            }
+
+            position += what.length();
+            return true;
+        }
+
+        private int nextNonWhitespace() throws IOException {
+
+            while (position < limit || fill(1)) {
+
+                char c = buffer[position++];
+
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+
+                    return c;
+                }
+            }
+
+            return -1;
+        }
+
+        // makes sure that at least minimum chars are available after position by moving the
+        // unread chars to the start of the buffer and reading more, returns false on EOF
+
+        private boolean fill(int minimum) throws IOException {
+
+            if (limit - position >= minimum) {
+
+                return true;
+            }
+
+            bufferOffset += position;
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+
+            while (limit < minimum) {
+
+                int count = reader.read(buffer, limit, buffer.length - limit);
+
+                if (count == -1) {
+
+                    return false;
+                }
+
+                limit += count;
+            }
+
+            return true;
+        }
+
+        private InvalidSyntaxException syntaxError(String message) {
+
+            return new InvalidSyntaxException(message + " at char " + getPosition());
+        }
+    }
+
+    // reads a file through memory mappings of at most MAX_MAPPING_SIZE bytes that are
+    // mapped one after the other, so files of any size can be read without reading
+    // them into the heap and repeated reads are served by the OS page cache
+
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long size;
+        private long mappingEnd;
+        private MappedByteBuffer buffer;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            return nextMapping()? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+
+            if (length == 0) {
+
+                return 0;
+
+            } else if (!nextMapping()) {
+
+                return -1;
+            }
+
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            buffer = null;
+            channel.close();
+        }
+
+        // returns false at the end of the file
+
+        private boolean nextMapping() throws IOException {
+
+            if (buffer != null && buffer.hasRemaining()) {
+
+                return true;
+
+            } else if (mappingEnd == size) {
+
+                return false;
+            }
+
+            long mappingStart = mappingEnd;
+
+            mappingEnd = Math.min(size, mappingStart + MAX_MAPPING_SIZE);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappingStart, mappingEnd - mappingStart);
+
+            return true;
+        }
+    }
+
+    // reads a file of at most MAX_ARRAY_SIZE bytes into a byte array of exactly its size,
+    // a plain read since the lexer needs the bytes in the heap anyway (mapping the file
+    // first would only add the cost of the mapping to the same copy)
+
+    private static byte[] readFile(FileChannel channel) throws IOException {
+
+        long size = channel.size();
+        byte[] bytes = new byte[(int)size];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        while (buffer.hasRemaining()) {
+
+            if (channel.read(buffer) == -1) {
+
+                throw new IOException("The file was truncated while it was read");
+            }
+        }
+
+        return bytes;
+    }
+
+    public JsonReader createReader(InputStream inputStream) {
+
+        return new JsonReader(inputStream);
+    }
+
+    // streams the file from memory mappings (decoded to chars through the fixed size
+    // buffer of the JsonReader), this works for files of any size with a flat heap
+
+    public JsonReader createReader(Path path) throws IOException {
+
+        return new JsonReader(new MappedInputStream(FileChannel.open(path, StandardOpenOption.READ)));
+    }
+
+    public JsonReader createReader(Reader reader) {
+
+        return new JsonReader(reader);
+    }
+
+    //
+    // JsonPushParser
+    // A non blocking parser for input that arrives in chunks, e.g. from a NIO channel.
+    // Chunks may be split anywhere (even inside a String, an escape sequence or a
+    // Number) since all of the parser state lives in an explicit state machine rather
+    // than on the call stack. Tokens are reported to a PushListener as soon as they are
+    // complete and Element subtrees at the requested depth are built on the side. Like
+    // the JsonReader it accepts a single top level value, see parseLines for NDJSON
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public interface PushListener {
+
+        default void onToken(Token token, String value) { }			// value is set for String and Number tokens
+        default void onAttributeName(String name) { }
+        default void onElement(Element element) { }				// the name is set when the element is an attribute
+    }
+
+    public class JsonPushParser {
+
+        private static final byte DOCUMENT_EMPTY = 0;
+        private static final byte DOCUMENT_NONEMPTY = 1;
+        private static final byte OBJECT_EMPTY = 2;
+        private static final byte OBJECT_NAME = 3;
+        private static final byte OBJECT_COLON = 4;
+        private static final byte OBJECT_VALUE = 5;
+        private static final byte OBJECT_NONEMPTY = 6;
+        private static final byte ARRAY_EMPTY = 7;
+        private static final byte ARRAY_VALUE = 8;
+        private static final byte ARRAY_NONEMPTY = 9;
+
+        private static final byte LEX_DEFAULT = 0;
+        private static final byte LEX_STRING = 1;
+        private static final byte LEX_STRING_ESCAPE = 2;
+        private static final byte LEX_STRING_UNICODE = 3;
+        private static final byte LEX_NUMBER = 4;
+        private static final byte LEX_LITERAL = 5;
+
+        private final PushListener listener;
+        private final int elementDepth;
+
+        private byte[] stack = new byte[32];
+        private int stackSize;
+        private byte lexState;
+        private long position;
+        private boolean failed;
+
+        private boolean stringIsName;
+        private byte[] stringBytes = new byte[64];	// raw UTF-8 bytes of the String since the last escape
+        private int stringLength;
+        private final StringBuilder sb = new StringBuilder();
+        private int unicodeValue;
+        private int unicodeCount;
+        private String literal;
+        private int literalIndex;
+        private long numberStart;
+
+        private final ArrayList<Element> elementStack = new ArrayList<Element>();
+        private String attributeName;
+        private byte[] scratch;
+
+        // elementDepth is the nesting level at which complete Elements are reported, 0 for
+        // whole documents, 1 for the items of the top level container and so on, -1 for none
+
+        public JsonPushParser(PushListener listener, int elementDepth) {
+
+            this.listener = listener;
+            this.elementDepth = elementDepth;
+            this.stack[stackSize++] = DOCUMENT_EMPTY;
+        }
+
+        public void feed(ByteBuffer chunk) throws InvalidSyntaxException {
+
+            if (chunk.hasArray()) {
+
+                feed(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                chunk.position(chunk.limit());
+                return;
+            }
+
+            if (scratch == null) { scratch = new byte[8192]; }
+
+            while (chunk.hasRemaining()) {
+
+                int length = Math.min(scratch.length, chunk.remaining());
+                chunk.get(scratch, 0, length);
+                feed(scratch, 0, length);
+            }
+        }
+
+        public void feed(byte[] bytes, int offset, int length) throws InvalidSyntaxException {
+
+            if (failed) { throw new InvalidSyntaxException("The parser already failed on invalid input"); }
+
+            int index = offset;
+            int end = offset + length;
+
+            try {
+
+                while (index < end) {
+
+                    if (lexState == LEX_STRING) {
+
+                        index = feedString(bytes, index, end);
+                        continue;
+                    }
+
+                    byte b = bytes[index];
+
+                    if (lexState == LEX_DEFAULT) {
+
+                        feedStructural(b);
+
+                    } else if (lexState == LEX_NUMBER) {
+
+                        if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+
+                            sb.append((char)b);
+
+                        } else {
+
+                            endNumber();
+                            continue; // the terminating byte is processed again as a structural one
+                        }
+
+                    } else if (lexState == LEX_LITERAL) {
+
+                        if (b != literal.charAt(literalIndex++)) { throw syntaxError("Unexpected character in literal"); }
+
+                        if (literalIndex == literal.length()) {
+
+                            lexState = LEX_DEFAULT;
+                            Token token = (b == 'e')? ((literal.length() == 4)? Token.True : Token.False) : Token.Null;
+                            onScalar(token, null, null);
+                        }
+
+                    } else if (lexState == LEX_STRING_ESCAPE) {
+
+                        feedEscape(b);
+
+                    } else {
+
+                        int digit = Character.digit(b, 16);
+
+                        if (digit == -1) { throw syntaxError("Invalid unicode escape sequence"); }
+
+                        unicodeValue = (unicodeValue << 4) | digit;
+
+                        if (++unicodeCount == 4) {
+
+                            sb.append((char)unicodeValue);
+                            lexState = LEX_STRING;
+                        }
+                    }
+
+                    index++;
+                    position++;
+                }
+
+            } catch (InvalidSyntaxException ex) {
+
+                failed = true;
+                throw ex;
+            }
+        }
+
+        // signals that no more input follows, completes a trailing top level Number and
+        // fails if the input stopped inside a value
+
+        public void endOfInput() throws InvalidSyntaxException {
+
+            if (lexState == LEX_NUMBER) {
+
+                endNumber();
+            }
+
+            if (lexState != LEX_DEFAULT || stackSize != 1) {
+
+                failed = true;
+                throw syntaxError("Unexpected end of input");
+            }
+        }
+
+        public int getDepth() {
+
+            return stackSize - 1;
+        }
+
+        public long getPosition() {
+
+            return position;
+        }
+
+        private int feedString(byte[] bytes, int index, int end) throws InvalidSyntaxException {
+
+            int start = index;
+
+            index = indexOfQuoteOrBackslash(bytes, index, end);
+
+            appendStringBytes(bytes, start, index - start);
+            position += index - start;
+
+            if (index < end) {
+
+                if (bytes[index] == '"') {
+
+                    endString();
+
+                } else {
+
+                    flushStringBytes();
+                    lexState = LEX_STRING_ESCAPE;
+                }
+
+                index++;
+                position++;
+            }
+
+            return index;
+        }
+
+        private void feedEscape(byte b) throws InvalidSyntaxException {
+
+            lexState = LEX_STRING;
+
+            if (b == '"' || b == '\\' || b == '/') {
+
+                sb.append((char)b);
+
+            } else if (b == 'b') {
+
+                sb.append('\b');
+
+            } else if (b == 'f') {
+
+                sb.append('\f');
+
+            } else if (b == 'n') {
+
+                sb.append('\n');
+
+            } else if (b == 'r') {
+
+                sb.append('\r');
+
+            } else if (b == 't') {
+
+                sb.append('\t');
+
+            } else if (b == 'u') {
+
+                lexState = LEX_STRING_UNICODE;
+                unicodeValue = 0;
+                unicodeCount = 0;
+
+            } else {
+
+                throw syntaxError("Invalid escape sequence");
+            }
+        }
+
+        private void feedStructural(byte b) throws InvalidSyntaxException {
+
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+
+                return;
+            }
+
+            byte state = stack[stackSize - 1];
+
+            if (b == '"') {
+
+                if (state == OBJECT_EMPTY || state == OBJECT_NAME) {
+
+                    stack[stackSize - 1] = OBJECT_COLON;
+                    stringIsName = true;
+
+                } else {
+
+                    startValue(state);
+                    stringIsName = false;
+                }
+
+                lexState = LEX_STRING;
+                stringLength = 0;
+                sb.setLength(0);
+
+            } else if (b == ',') {
+
+                if (state == OBJECT_NONEMPTY) {
+
+                    stack[stackSize - 1] = OBJECT_NAME;
+
+                } else if (state == ARRAY_NONEMPTY) {
+
+                    stack[stackSize - 1] = ARRAY_VALUE;
+
+                } else {
+
+                    throw syntaxError("Unexpected Comma");
+                }
+
+            } else if (b == ':') {
+
+                if (state != OBJECT_COLON) { throw syntaxError("Unexpected Colon"); }
+
+                stack[stackSize - 1] = OBJECT_VALUE;
+
+            } else if (b == '{' || b == '[') {
+
+                startValue(state);
+
+                boolean isObject = (b == '{');
+
+                if (stackSize > maxDepth) { throw syntaxError("Maximum nesting depth (" + maxDepth + ") exceeded"); }
+
+                if (stackSize == stack.length) { stack = Arrays.copyOf(stack, stackSize * 2); }
+
+                stack[stackSize++] = isObject? OBJECT_EMPTY : ARRAY_EMPTY;
+
+                listener.onToken(isObject? Token.ObjectStart : Token.ArrayStart, null);
+
+                if (!elementStack.isEmpty() || stackSize - 2 == elementDepth) {
+
+                    Element element = new Element(isObject? ElementType.Object : ElementType.Array, "");
+                    element.elements = isObject? new AttributeList() : new ArrayList<Element>();
+
+                    addElement(element, stack[stackSize - 2]);
+                    elementStack.add(element);
+                }
+
+            } else if (b == '}' || b == ']') {
+
+                boolean isObject = (b == '}');
+
+                if (isObject && state != OBJECT_EMPTY && state != OBJECT_NONEMPTY) { throw syntaxError("Unexpected ObjectEnd"); }
+                if (!isObject && state != ARRAY_EMPTY && state != ARRAY_NONEMPTY) { throw syntaxError("Unexpected ArrayEnd"); }
+
+                stackSize--;
+
+                listener.onToken(isObject? Token.ObjectEnd : Token.ArrayEnd, null);
+
+                if (!elementStack.isEmpty()) {
+
+                    Element element = elementStack.remove(elementStack.size() - 1);
+
+                    if (elementStack.isEmpty()) {
+
+                        listener.onElement(element);
+                    }
+                }
+
+            } else if (b == '-' || (b >= '0' && b <= '9')) {
+
+                startValue(state);
+
+                lexState = LEX_NUMBER;
+                numberStart = position;
+                sb.setLength(0);
+                sb.append((char)b);
+
+            } else if (b == 't' || b == 'f' || b == 'n') {
+
+                startValue(state);
+
+                lexState = LEX_LITERAL;
+                literal = (b == 't')? "true" : (b == 'f')? "false" : "null";
+                literalIndex = 1;
+
+            } else {
+
+                throw syntaxError("Unexpected character");
+            }
+        }
+
+        private void startValue(byte state) throws InvalidSyntaxException {
+
+            if (state == OBJECT_VALUE) {
+
+                stack[stackSize - 1] = OBJECT_NONEMPTY;
+
+            } else if (state == ARRAY_EMPTY || state == ARRAY_VALUE) {
+
+                stack[stackSize - 1] = ARRAY_NONEMPTY;
+
+            } else if (state == DOCUMENT_EMPTY) {
+
+                stack[stackSize - 1] = DOCUMENT_NONEMPTY;
+
+            } else if (state == DOCUMENT_NONEMPTY) {
+
+                throw syntaxError("Unexpected data after the top level value");
+
+            } else {
+
+                throw syntaxError("Unexpected value");
+            }
+        }
+
+        private void appendStringBytes(byte[] bytes, int offset, int length) {
+
+            if (stringLength + length > stringBytes.length) {
+
+                stringBytes = Arrays.copyOf(stringBytes, Math.max(stringBytes.length * 2, stringLength + length));
+            }
+
+            System.arraycopy(bytes, offset, stringBytes, stringLength, length);
+            stringLength += length;
+        }
+
+        private void flushStringBytes() {
+
+            appendUTF8(sb, stringBytes, 0, stringLength);
+            stringLength = 0;
+        }
+
+        private void endString() throws InvalidSyntaxException {
+
+            String value;
+
+            if (sb.length() == 0) {
+
+                value = (stringIsName && keyCache != null)? keyCache.get(stringBytes, 0, stringLength) : new String(stringBytes, 0, stringLength, StandardCharsets.UTF_8);
+
+            } else {
+
+                flushStringBytes();
+                value = sb.toString();
+            }
+
+            lexState = LEX_DEFAULT;
+
+            if (stringIsName) {
+
+                attributeName = value;
+                listener.onAttributeName(value);
+
+            } else {
+
+                onScalar(Token.String, value, null);
+            }
+        }
+
+        private void endNumber() throws InvalidSyntaxException {
+
+            lexState = LEX_DEFAULT;
+
+            String number = sb.toString();
+
+            onScalar(Token.Number, number, createNumberElement(number, numberStart));
+        }
+
+        private void onScalar(Token token, String value, Element element) {
+
+            listener.onToken(token, value);
+
+            if (elementStack.isEmpty() && stackSize - 1 != elementDepth) {
+
+                return;
+            }
+
+            if (element != null) {
+
+                // Numbers are created (and validated) up front
+
+            } else if (token == Token.String) {
+
+                element = new Element(ElementType.String, value);
+
+            } else if (token == Token.Null) {
+
+                element = new Element(ElementType.Null, "null");
+
+            } else {
+
+                element = new Element(ElementType.Boolean, (token == Token.True)? "true" : "false");
+            }
+
+            addElement(element, stack[stackSize - 1]);
+
+            if (elementStack.isEmpty()) {
+
+                listener.onElement(element);
+            }
+        }
+
+        // adds element to the container being built, an element that is reported on its own
+        // only takes the attribute name when its parent on the stack is an Object
+
+        private void addElement(Element element, byte parentState) {
+
+            if (elementStack.isEmpty()) {
+
+                if (parentState >= OBJECT_EMPTY && parentState <= OBJECT_NONEMPTY) {
+
+                    element.name = attributeName;
+                }
+
+                return;
+            }
+
+            Element parent = elementStack.get(elementStack.size() - 1);
+
+            if (parent.type == ElementType.Object) {
+
+                element.name = attributeName;
+            }
+
+            parent.elements.add(element);
+        }
+
+        private InvalidSyntaxException syntaxError(String message) {
+
+            return new InvalidSyntaxException(message + " at char " + position);
+        }
+    }
+
+    public JsonPushParser createPushParser(PushListener listener, int elementDepth) {
+
+        return new JsonPushParser(listener, elementDepth);
+    }
+
+    //
+    // KeyCache
+    // A bounded cache of attribute names, when set through setKeyCache() names are looked
+    // up by a hash over their raw bytes and the canonical String is returned instead of a
+    // new copy per Object. It is direct mapped so it never grows beyond its capacity and
+    // it can be shared between parsers and threads (entries are immutable)
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public static class KeyCache {
+
+        private static final int MAX_KEY_LENGTH = 64;
+
+        private static class Entry {
+
+            final int hash;
+            final byte[] bytes;
+            final String key;
+
+            Entry(int hash, byte[] bytes, String key) {
+
+                this.hash = hash;
+                this.bytes = bytes;
+                this.key = key;
+            }
+        }
+
+        private final Entry[] entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public KeyCache() {
+
+            this(4096);
+        }
+
+        public KeyCache(int capacity) {
+
+            if (capacity < 1 || capacity > (1 << 30)) { throw new IllegalArgumentException("Invalid capacity " + capacity); }
+
+            this.entries = new Entry[Integer.highestOneBit(capacity * 2 - 1)];
+        }
+
+        public String get(byte[] bytes, int start, int length) {
+
+            int hash = 0;
+
+            for (int i = start; i < start + length; ++i) {
+
+                hash = 31 * hash + bytes[i];
+            }
+
+            return get(bytes, start, length, hash);
+        }
+
+        // hash has to be computed as in get(byte[], int, int), the parser does so while it
+        // looks for the closing quote
+
+        String get(byte[] bytes, int start, int length, int hash) {
+
+            if (length > MAX_KEY_LENGTH) {
+
+                misses.increment();
+                return new String(bytes, start, length, StandardCharsets.UTF_8);
+            }
+
+            int slot = spreadHash(hash) & (entries.length - 1);
+            Entry entry = entries[slot];
+
+            if (entry != null && entry.hash == hash && Arrays.equals(entry.bytes, 0, entry.bytes.length, bytes, start, start + length)) {
+
+                hits.increment();
+                return entry.key;
+            }
+
+            misses.increment();
+
+            if (entry != null) { evictions.increment(); }
+
+            String key = new String(bytes, start, length, StandardCharsets.UTF_8);
+            entries[slot] = new Entry(hash, Arrays.copyOfRange(bytes, start, start + length), key);
+
+            return key;
+        }
+
+        public long getHitCount() {
+
+            return hits.sum();
+        }
+
+        public long getMissCount() {
+
+            return misses.sum();
+        }
+
+        public long getEvictionCount() {
+
+            return evictions.sum();
+        }
+
+        public double getHitRate() {
+
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+
+            return (total == 0)? 0.0 : (double)hitCount / total;
+        }
+
+        public void clear() {
+
+            Arrays.fill(entries, null);
+        }
+    }
+
+    //
+    // DocumentCache
+    // A thread safe cache of parsed documents for input that is parsed over and over
+    // (configuration, policies). Documents are found by a 64 bit hash and the length of
+    // the input and confirmed by comparing the bytes, and they are returned frozen (see
+    // FrozenElement) so one tree can be shared by every caller. Hits are a lookup in a
+    // ConcurrentHashMap and take no lock. Misses add the document under a lock, and when
+    // the estimated size of the cached documents (and their source bytes) goes over the
+    // budget the least recently used of a random sample of entries is evicted until it
+    // fits again (sampled LRU, the sample is drawn from an array of all entries since
+    // the map itself can only be iterated in its fixed bucket order)
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public static class DocumentCache {
+
+        private static final int EVICTION_SAMPLE_SIZE = 16;
+        private static final long ACCESS_RESOLUTION_NANOS = 1000000;
+
+        private static final class Key {
+
+            final long hash;
+            final byte[] bytes;
+            final int start;
+            final int length;
+
+            Key(long hash, byte[] bytes, int start, int length) {
+
+                this.hash = hash;
+                this.bytes = bytes;
+                this.start = start;
+                this.length = length;
+            }
+
+            @Override
+            public int hashCode() {
+
+                return (int)(hash ^ (hash >>> 32));
+            }
+
+            @Override
+            public boolean equals(Object other) {
+
+                if (!(other instanceof Key)) {
+
+                    return false;
+                }
+
+                Key key = (Key)other;
+
+                return hash == key.hash && length == key.length && Arrays.equals(bytes, start, start + length, key.bytes, key.start, key.start + key.length);
+            }
+        }
+
+        private static final class Entry {
+
+            final Key key;
+            final FrozenElement element;
+            final long size;
+            long lastAccess;							// not volatile, a lost write only ages the entry
+            int slot;									// the index in slots, guarded by the cache
+
+            Entry(Key key, FrozenElement element, long size, long lastAccess) {
+
+                this.key = key;
+                this.element = element;
+                this.size = size;
+                this.lastAccess = lastAccess;
+            }
+        }
+
+        private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+        private Entry[] slots = new Entry[16];		// every cached entry once, guarded by this
+        private int slotCount;
+        private final AweformJSON parser;
+        private final long maxBytes;
+        private final AtomicLong size = new AtomicLong();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public DocumentCache(long maxBytes) {
+
+            this(maxBytes, new AweformJSON());
+        }
+
+        // misses are parsed by parser, so its limits and KeyCache apply. It is shared by
+        // every thread that uses the cache and must not be reconfigured afterwards
+
+        public DocumentCache(long maxBytes, AweformJSON parser) {
+
+            if (maxBytes < 1) { throw new IllegalArgumentException("Invalid budget " + maxBytes); }
+
+            if (parser == null) { throw new IllegalArgumentException("The parser cannot be null"); }
+
+            this.maxBytes = maxBytes;
+            this.parser = parser;
+        }
+
+        public FrozenElement parse(String json) throws InvalidSyntaxException {
+
+            if (json == null) { throw new InvalidSyntaxException("Cannot parse a null string"); }
+
+            return parse(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public FrozenElement parse(byte[] utf8) throws InvalidSyntaxException {
+
+            if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+            return parse(utf8, 0, utf8.length);
+        }
+
+        // input with a syntax error is not cached
+
+        public FrozenElement parse(byte[] utf8, int offset, int length) throws InvalidSyntaxException {
+
+            if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+            if (offset < 0 || length < 0 || offset > utf8.length - length) {
+
+                throw new IndexOutOfBoundsException("Invalid offset (" + offset + ") and length (" + length + ") for a byte array of length " + utf8.length);
+            }
+
+            Key key = new Key(hash(utf8, offset, length), utf8, offset, length);
+            Entry entry = entries.get(key);
+
+            if (entry != null) {
+
+                hits.increment();
+
+                // hits on a hot entry must not all write its cache line
+
+                long now = System.nanoTime();
+
+                if (now - entry.lastAccess > ACCESS_RESOLUTION_NANOS) {
+
+                    entry.lastAccess = now;
+                }
+
+                return entry.element;
+            }
+
+            misses.increment();
+
+            byte[] bytes = Arrays.copyOfRange(utf8, offset, offset + length);
+            FrozenElement element = parser.parseFrozen(bytes);
+            long entrySize = 64 + 16 + length + element.document.getEstimatedSize();
+
+            if (entrySize > maxBytes) {
+
+                return element; // would evict everything else
+            }
+
+            Key storedKey = new Key(key.hash, bytes, 0, length);
+            Entry newEntry = new Entry(storedKey, element, entrySize, System.nanoTime());
+
+            synchronized (this) {
+
+                Entry existingEntry = entries.putIfAbsent(storedKey, newEntry);
+
+                if (existingEntry != null) {
+
+                    return existingEntry.element; // parsed by another thread at the same time
+                }
+
+                if (slotCount == slots.length) {
+
+                    slots = Arrays.copyOf(slots, slotCount * 2);
+                }
+
+                newEntry.slot = slotCount;
+                slots[slotCount++] = newEntry;
+
+                if (size.addAndGet(entrySize) > maxBytes) {
+
+                    evict();
+                }
+            }
+
+            return element;
+        }
+
+        // sampled LRU, the oldest of EVICTION_SAMPLE_SIZE entries picked at random (with
+        // repetition) is evicted, called with the lock held
+
+        private void evict() {
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            while (size.get() > maxBytes && slotCount > 0) {
+
+                Entry oldest = null;
+
+                for (int i = 0; i < EVICTION_SAMPLE_SIZE; ++i) {
+
+                    Entry entry = slots[random.nextInt(slotCount)];
+
+                    if (oldest == null || entry.lastAccess < oldest.lastAccess) {
+
+                        oldest = entry;
+                    }
+                }
+
+                remove(oldest);
+                evictions.increment();
+            }
+        }
+
+        // called with the lock held, the last slot takes the place of the removed one
+
+        private void remove(Entry entry) {
+
+            Entry lastEntry = slots[--slotCount];
+
+            slots[entry.slot] = lastEntry;
+            lastEntry.slot = entry.slot;
+            slots[slotCount] = null;
+
+            entries.remove(entry.key, entry);
+            size.addAndGet(-entry.size);
+        }
+
+        // a 64 bit multiply and rotate hash over eight bytes at a time
+
+        private static long hash(byte[] bytes, int offset, int length) {
+
+            long hash = length * 0x9E3779B97F4A7C15L;
+            int end = offset + length;
+            int i = offset;
+
+            for (; i + 8 <= end; i += 8) {
+
+                hash = Long.rotateLeft(hash ^ ((long)LONG_VIEW.get(bytes, i) * 0xC2B2AE3D27D4EB4FL), 31) * 0x9E3779B97F4A7C15L;
+            }
+
+            for (; i < end; ++i) {
+
+                hash = Long.rotateLeft(hash ^ (bytes[i] * 0xC2B2AE3D27D4EB4FL), 31) * 0x9E3779B97F4A7C15L;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+
+            return hash ^ (hash >>> 33);
+        }
+
+        public long getHitCount() {
+
+            return hits.sum();
+        }
+
+        public long getMissCount() {
+
+            return misses.sum();
+        }
+
+        public long getEvictionCount() {
+
+            return evictions.sum();
+        }
+
+        public double getHitRate() {
+
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+
+            return (total == 0)? 0.0 : (double)hitCount / total;
+        }
+
+        public int getDocumentCount() {
+
+            return entries.size();
+        }
+
+        // the estimated heap used by the cached documents and their source bytes
+
+        public long getEstimatedSize() {
+
+            return size.get();
+        }
+
+        public synchronized void clear() {
+
+            while (slotCount > 0) {
+
+                remove(slots[slotCount - 1]);
+            }
+
+            slots = new Entry[16];
+        }
+    }
+
+    // returns a parser for the calling thread that reuses its buffers and stack between
+    // calls, useful on servers that make many small parse() calls
+
+    public static AweformJSON forCurrentThread() {
+
+        return threadParsers.get();
+    }
+
+    // the maximum number of nested Objects and Arrays accepted by parse(), JsonReader and
+    // JsonPushParser, deeper input fails with an InvalidSyntaxException
+
+    public void setMaxDepth(int maxDepth) {
+
+        setLimits(limits.withMaxDepth(maxDepth));
+    }
+
+    public int getMaxDepth() {
+
+        return maxDepth;
+    }
+
+    // the limits enforced by parse(), see ParseLimits
+
+    public void setLimits(ParseLimits limits) {
+
+        if (limits == null) { throw new IllegalArgumentException("The limits cannot be null, use ParseLimits.DEFAULT instead"); }
+
+        this.limits = limits;
+        this.maxDepth = limits.maxDepth;
+    }
+
+    public ParseLimits getLimits() {
+
+        return limits;
+    }
+
+    private void checkInputLength(long offset, long length) throws InvalidSyntaxException {
+
+        if (length > limits.maxInputLength) {
+
+            throw new InvalidSyntaxException("Maximum input length (" + limits.maxInputLength + ") exceeded by an input of " + length + " bytes at char " + (offset + limits.maxInputLength));
+        }
+    }
+
+    public void setKeyCache(KeyCache keyCache) {
+
+        this.keyCache = keyCache;
+    }
+
+    public KeyCache getKeyCache() {
+
+        return keyCache;
+    }
+
+    public Element parse(String json) throws InvalidSyntaxException {
+
+        if (json == null) { throw new InvalidSyntaxException("Cannot parse a null string"); }
+
+        checkInputLength(0, json.length()); // before encoding, there are at least as many bytes as chars
+
+        return parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Element parse(byte[] utf8) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        return parse(utf8, 0, utf8.length);
+    }
+
+    public Element parse(byte[] utf8, int offset, int length) throws InvalidSyntaxException {
+
+        return parse(utf8, offset, length, null);
+    }
+
+    // only the attributes selected by projection end up in the returned Element, all
+    // other values are skipped without being decoded, but they are still checked so the
+    // same input is rejected with or without a projection
+
+    public Element parse(String json, Projection projection) throws InvalidSyntaxException {
+
+        if (json == null) { throw new InvalidSyntaxException("Cannot parse a null string"); }
+
+        checkInputLength(0, json.length());
+
+        return parse(json.getBytes(StandardCharsets.UTF_8), projection);
+    }
+
+    public Element parse(byte[] utf8, Projection projection) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        return parse(utf8, 0, utf8.length, projection);
+    }
+
+    public Element parse(byte[] utf8, int offset, int length, Projection projection) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        if (offset < 0 || length < 0 || offset > utf8.length - length) {
+
+            throw new IndexOutOfBoundsException("Invalid offset (" + offset + ") and length (" + length + ") for a byte array of length " + utf8.length);
+        }
+
+        checkInputLength(offset, length);
+
+        ParseContext parseContext = acquireParseContext();
+        parseContext.bytes = utf8;
+        parseContext.index = offset;
+        parseContext.end = offset + length;
+
+        try {
+
+            return parseRootElement(parseContext, projection);
+
+        } finally {
+
+            parseContext.reset();
+        }
+    }
+
+    // parses the value at parseContext.index, leaves the index after it
+
+    private Element parseRootElement(ParseContext parseContext, Projection projection) throws InvalidSyntaxException {
+
+        InstrumentationListener listener = instrumentationListener;
+        boolean isRecorded = EventState.isParseEnabled;
+
+        if (listener == null && !isRecorded) {
+
+            return parseElement(parseContext, projection);
+        }
+
+        int start = parseContext.index;
+        long allocatedBytes = getAllocatedBytes();
+        long startTime = System.nanoTime();
+        Object event = isRecorded? JfrEvents.begin(true) : null;
+
+        Element element = parseElement(parseContext, projection);
+
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        if (event != null) { JfrEvents.end(event); }
+
+        reportCall(listener, event, CallStats.of(true, element, parseContext.end - start, -1, elapsedNanos, allocatedBytes));
+
+        return element;
+    }
+
+    // NOTE: parses the remaining bytes of the buffer without moving its position, heap
+    // buffers are parsed in place while direct buffers have to be copied to the heap once
+
+    public Element parse(ByteBuffer utf8) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null buffer"); }
+
+        if (utf8.hasArray()) {
+
+            return parse(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+        }
+
+        checkInputLength(0, utf8.remaining());
+
+        byte[] bytes = new byte[utf8.remaining()];
+        utf8.duplicate().get(bytes);
+
+        return parse(bytes);
+    }
+
+    // NOTE: this is not a memory mapped parse. The lexer works on byte arrays, so the
+    // whole file is read into the heap once (a byte per input byte, there is no String
+    // or char[] in between) and then parsed like parse(byte[]), the heap has to hold the
+    // file and its tree at the same time. Files of more than 2 GB cannot be held in a
+    // byte array, they have to be streamed with createReader(path), the only reader
+    // that works from memory mappings
+
+    public Element parse(Path path) throws IOException, InvalidSyntaxException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            checkInputLength(0, channel.size());
+
+            if (channel.size() > MAX_ARRAY_SIZE) {
+
+                throw new IOException("The file " + path + " is too large to be parsed into a tree, use createReader(path)");
+            }
+
+            return parse(readFile(channel));
+        }
+    }
+
+    // parses on demand, see LazyElement, this is much cheaper when only a few values of
+    // a large document are read. The source bytes are referenced (not copied) by the
+    // returned Element so they must not be modified while it is in use
+
+    public Element parseLazy(String json) throws InvalidSyntaxException {
+
+        if (json == null) { throw new InvalidSyntaxException("Cannot parse a null string"); }
+
+        return parseLazy(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Element parseLazy(byte[] utf8) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        return parseLazy(utf8, 0, utf8.length);
+    }
+
+    public Element parseLazy(byte[] utf8, int offset, int length) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        if (offset < 0 || length < 0 || offset > utf8.length - length) {
+
+            throw new IndexOutOfBoundsException("Invalid offset (" + offset + ") and length (" + length + ") for a byte array of length " + utf8.length);
+        }
+
+        checkInputLength(offset, length);
+
+        ParseContext parseContext = acquireParseContext();
+        parseContext.bytes = utf8;
+        parseContext.index = offset;
+        parseContext.end = offset + length;
+
+        try {
+
+            return createLazyElement(parseContext);
+
+        } finally {
+
+            parseContext.reset();
+        }
+    }
+
+    // NOTE: like parse(path) a plain read and not a memory mapping, the returned Element
+    // keeps the bytes of the whole file in the heap. Files of more than 2 GB have to be
+    // read with createReader(path)
+
+    public Element parseLazy(Path path) throws IOException, InvalidSyntaxException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            checkInputLength(0, channel.size());
+
+            if (channel.size() > MAX_ARRAY_SIZE) {
+
+                throw new IOException("The file " + path + " is too large to be parsed lazily, use createReader(path)");
+            }
+
+            return parseLazy(readFile(channel));
+        }
+    }
+
+    // parses straight into an immutable, compact FrozenElement for documents that are
+    // kept in memory for a long time and shared between threads
+
+    public FrozenElement parseFrozen(String json) throws InvalidSyntaxException {
+
+        return parse(json).freeze();
+    }
+
+    public FrozenElement parseFrozen(byte[] utf8) throws InvalidSyntaxException {
+
+        return parse(utf8).freeze();
+    }
+
+    // parses a complete value without recursion, the Objects and Arrays that are still
+    // open are kept on an explicit stack so deeply nested input can neither overflow the
+    // call stack nor go beyond maxDepth. With a projection, values that are not selected
+    // are skipped and never become Elements (a null projection selects everything)
+
+    private Element parseElement(ParseContext parseContext, Projection projection) throws InvalidSyntaxException {
+
+        Element[] stack = parseContext.stack;
+        Projection[] projections = parseContext.projections;
+        int depth = 0;
+
+        if (stack == null) {
+
+            stack = parseContext.stack = new Element[32];
+            projections = parseContext.projections = new Projection[32];
+        }
+
+        Element rootElement = null;
+        String attributeName = null;
+        int elementCount = 0;
+        int maxElementCount = limits.maxElementCount;
+        int maxAttributeCount = limits.maxAttributeCount;
+        Token token = getNextToken(parseContext);
+
+        while (true) {
+
+            boolean isExcluded = (projection == Projection.EXCLUDED);
+            boolean isContainer = !isExcluded && (token == Token.ObjectStart || token == Token.ArrayStart);
+            Element element = null;
+
+            if (!isExcluded && ++elementCount > maxElementCount) {
+
+                throw new InvalidSyntaxException("Maximum element count (" + maxElementCount + ") exceeded at char " + parseContext.tokenIndex);
+            }
+
+            if (isExcluded) {
+
+                skipExcludedValue(parseContext, token, depth, maxDepth);
+
+            } else if (isContainer) {
+
+                element = new Element((token == Token.ObjectStart)? ElementType.Object : ElementType.Array, "");
+                element.elements = (token == Token.ObjectStart)? new AttributeList() : new ArrayList<Element>();
+
+            } else {
+
+                element = parseScalarElement(parseContext, token);
+            }
+
+            if (element != null) {
+
+                element.name = attributeName;
+
+                if (depth == 0) {
+
+                    rootElement = element;
+
+                } else {
+
+                    List<Element> elements = stack[depth - 1].elements;
+
+                    if (attributeName != null && elements.size() == maxAttributeCount) {
+
+                        throw new InvalidSyntaxException("Maximum attribute count (" + maxAttributeCount + ") exceeded at char " + parseContext.tokenIndex);
+                    }
+
+                    elements.add(element);
+                }
+            }
+
+            if (isContainer) {
+
+                if (depth == maxDepth) {
+
+                    throw new InvalidSyntaxException("Maximum nesting depth (" + maxDepth + ") exceeded at char " + parseContext.tokenIndex);
+
+                } else if (depth == stack.length) {
+
+                    stack = parseContext.stack = Arrays.copyOf(stack, depth * 2);
+                    projections = parseContext.projections = Arrays.copyOf(projections, depth * 2);
+                }
+
+                projections[depth] = projection;
+                stack[depth++] = element;
+
+                boolean isObject = (element.type == ElementType.Object);
+
+                token = getNextToken(parseContext);
+
+                if (token != (isObject? Token.ObjectEnd : Token.ArrayEnd)) {
+
+                    if (isObject) {
+
+                        attributeName = parseMemberName(parseContext, token);
+                        projection = Projection.select(projections[depth - 1], attributeName);
+                        token = getNextToken(parseContext);
+
+                    } else {
+
+                        attributeName = null;
+                    }
+
+                    continue;
+                }
+
+                depth--;
+            }
+
+            // the value is complete, close containers until another value follows a Comma
+
+            while (true) {
+
+                if (depth == 0) {
+
+                    return rootElement;
+                }
+
+                boolean isObject = (stack[depth - 1].type == ElementType.Object);
+
+                token = getNextToken(parseContext);
+
+                if (token == Token.Comma) {
+
+                    token = getNextToken(parseContext);
+                    projection = projections[depth - 1];
+
+                    if (isObject) {
+
+                        attributeName = parseMemberName(parseContext, token);
+                        projection = Projection.select(projection, attributeName);
+                        token = getNextToken(parseContext);
+
+                    } else {
+
+                        attributeName = null;
+                    }
+
+                    break;
+
+                } else if (token == (isObject? Token.ObjectEnd : Token.ArrayEnd)) {
+
+                    depth--;
+
+                } else {
+
+                    throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a Comma or " + (isObject? Token.ObjectEnd : Token.ArrayEnd));
+                }
+            }
+        }
+    }
+
+    // token is the first token of the value, continues after the value. The value is
+    // checked just like parseElement would check it (the same syntax errors and limits at
+    // the same chars, depth is where the value starts) but no Elements or Strings are
+    // created, the open containers are kept as bits
+
+    private static void skipExcludedValue(ParseContext parseContext, Token token, int depth, int maxDepth) throws InvalidSyntaxException {
+
+        long[] objectBits = null;
+        long objectBitsHead = 0;
+        int level = 0;
+
+        while (true) {
+
+            if (token == Token.ObjectStart || token == Token.ArrayStart) {
+
+                if (depth + level == maxDepth) {
+
+                    throw new InvalidSyntaxException("Maximum nesting depth (" + maxDepth + ") exceeded at char " + parseContext.tokenIndex);
+                }
+
+                boolean isObject = (token == Token.ObjectStart);
+
+                if (level < 64) {
+
+                    objectBitsHead = isObject? (objectBitsHead | (1L << level)) : (objectBitsHead & ~(1L << level));
+
+                } else {
+
+                    if (objectBits == null || (level >> 6) >= objectBits.length) {
+
+                        objectBits = Arrays.copyOf((objectBits == null)? new long[2] : objectBits, Math.max(2, (level >> 6) * 2));
+                    }
+
+                    objectBits[level >> 6] = isObject? (objectBits[level >> 6] | (1L << level)) : (objectBits[level >> 6] & ~(1L << level));
+                }
+
+                level++;
+                token = getNextToken(parseContext);
+
+                if (token != (isObject? Token.ObjectEnd : Token.ArrayEnd)) {
+
+                    if (isObject) {
+
+                        token = skipMemberName(parseContext, token);
+                    }
+
+                    continue;
+                }
+
+                level--;
+
+            } else {
+
+                skipScalar(parseContext, token);
+            }
+
+            // the value is complete, close containers until another value follows a Comma
+
+            while (true) {
+
+                if (level == 0) {
+
+                    return;
+                }
+
+                int top = level - 1;
+                boolean isObject = ((((top < 64)? objectBitsHead : objectBits[top >> 6]) >>> top) & 1) != 0;
+
+                token = getNextToken(parseContext);
+
+                if (token == Token.Comma) {
+
+                    token = getNextToken(parseContext);
+
+                    if (isObject) {
+
+                        token = skipMemberName(parseContext, token);
+                    }
+
+                    break;
+
+                } else if (token == (isObject? Token.ObjectEnd : Token.ArrayEnd)) {
+
+                    level--;
+
+                } else {
+
+                    throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a Comma or " + (isObject? Token.ObjectEnd : Token.ArrayEnd));
+                }
+            }
+        }
+    }
+
+    // the counterpart of parseMemberName, returns the first token of the value
+
+    private static Token skipMemberName(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token != Token.String) {
+
+            throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected an attribute name");
+        }
+
+        skipString(parseContext);
+
+        if (getNextToken(parseContext) != Token.Colon) {
+
+            throw new InvalidSyntaxException("Unexpected token at char " + parseContext.tokenIndex + " expected a Colon before the attribute value");
+        }
+
+        return getNextToken(parseContext);
+    }
+
+    // the counterpart of parseScalarElement, True, False and Null are already checked by
+    // getNextToken
+
+    private static void skipScalar(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token == Token.String) {
+
+            skipString(parseContext);
+
+        } else if (token == Token.Number) {
+
+            byte[] bytes = parseContext.bytes;
+            int start = parseContext.tokenIndex;
+            int end = getNumberEnd(parseContext, start);
+
+            if (!isValidNumber(bytes, start, end)) {
+
+                throw new InvalidSyntaxException("Invalid number (" + new String(bytes, start, end - start, StandardCharsets.ISO_8859_1) + ") at char " + start);
+            }
+
+            parseContext.index = end;
+
+        } else if (token != Token.True && token != Token.False && token != Token.Null) {
+
+            throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex);
+        }
+    }
+
+    // the counterpart of parseString, checks the escape sequences without decoding them
+
+    private static void skipString(ParseContext parseContext) throws InvalidSyntaxException {
+
+        byte[] bytes = parseContext.bytes;
+        int end = getStringEnd(parseContext, parseContext.index);
+
+        while (true) {
+
+            int i = indexOfQuoteOrBackslash(bytes, parseContext.index, end);
+
+            if (i == end || i + 1 == end) {
+
+                parseContext.index = end;
+                throw incompleteString(parseContext, end);
+
+            } else if (bytes[i] == '"') {
+
+                parseContext.index = i + 1;
+                return;
+            }
+
+            byte c = bytes[i + 1];
+
+            parseContext.index = i + 2;
+
+            if (c == 'u') {
+
+                if (end - parseContext.index < 4) {
+
+                    throw incompleteString(parseContext, end);
+                }
+
+                parseHex4(bytes, parseContext.index);
+
+                parseContext.index += 4;
+
+            } else if (c != '"' && c != '\\' && c != '/' && c != 'b' && c != 'f' && c != 'n' && c != 'r' && c != 't') {
+
+                throw new InvalidSyntaxException("Invalid escape sequence at char " + parseContext.index);
+            }
+        }
+    }
+
+    private static Element parseScalarElement(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token == Token.String) {
+
+            return new Element(ElementType.String, parseString(parseContext));
+
+        } else if (token == Token.Number) {
+
+            return parseNumberElement(parseContext);
+
+        } else if (token == Token.True) {
+
+            return new Element(ElementType.Boolean, "true");
+
+        } else if (token == Token.False) {
+
+            return new Element(ElementType.Boolean, "false");
+
+        } else if (token == Token.Null) {
+
+            return new Element(ElementType.Null, "null");
+
+        } else {
+
+            throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex);
+        }
+    }
+
+    // reads the attribute name (token is the String token) and the Colon that follows it
+
+    private static String parseMemberName(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token != Token.String) {
+
+            throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected an attribute name");
+        }
+
+        String attributeName = parseAttributeName(parseContext);
+
+        if (getNextToken(parseContext) != Token.Colon) {
+
+            throw new InvalidSyntaxException("Unexpected token at char " + parseContext.tokenIndex + " expected a Colon before the attribute value");
+        }
+
+        return attributeName;
+    }
+
+    // the opening quote has already been read
+
+    private static String parseString(ParseContext parseContext) throws InvalidSyntaxException {
+
+        byte[] bytes = parseContext.bytes;
+        int start = parseContext.index;
+        int end = getStringEnd(parseContext, start);
+        int i = start;
+        long highBits = 0;
+
+        // fast path, strings without escapes are decoded straight from the source bytes. The
+        // closing quote is searched eight bytes at a time, the high bits of every word seen
+        // tell if the string is pure ASCII (a word may reach past the quote, which only
+        // costs a UTF-8 decode instead of a Latin-1 one)
+
+        while (i + 8 <= end) {
+
+            long word = (long)LONG_VIEW.get(bytes, i);
+
+            highBits |= word;
+
+            long mask = zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES);
+
+            if (mask != 0) {
+
+                i += Long.numberOfTrailingZeros(mask) >>> 3;
+                break;
+            }
+
+            i += 8;
+        }
+
+        while (i < end) {
+
+            byte b = bytes[i];
+
+            if (b == '"' || b == '\\') {
+
+                break;
+            }
+
+            highBits |= b;
+            i++;
+        }
+
+        if (i == end) {
+
+            parseContext.index = end;
+
+            throw incompleteString(parseContext, end);
+
+        } else if (bytes[i] == '"') {
+
+            parseContext.index = i + 1;
+            return new String(bytes, start, i - start, ((highBits & HIGH_BITS) == 0)? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+
+        StringBuilder sb = parseContext.parseStringStringBuilder;
+        sb.setLength(0);
+
+        appendUTF8(sb, bytes, start, i);
+
+        parseContext.index = i;
+        return parseEscapedString(parseContext, sb, end);
+    }
+
+    // the strings are only scanned up to maxStringLength bytes (and the closing quote), so
+    // an overlong string is rejected before the rest of it is read
+
+    private static int getStringEnd(ParseContext parseContext, int start) {
+
+        int maxStringLength = parseContext.maxStringLength;
+
+        return (parseContext.end - start > maxStringLength)? start + maxStringLength + 1 : parseContext.end;
+    }
+
+    private static InvalidSyntaxException incompleteString(ParseContext parseContext, int end) {
+
+        if (end < parseContext.end) {
+
+            return new InvalidSyntaxException("Maximum string length (" + parseContext.maxStringLength + ") exceeded at char " + parseContext.tokenIndex);
+        }
+
+        return new InvalidSyntaxException("Found an incomplete string at char " + parseContext.index);
+    }
+
+    private static String parseAttributeName(ParseContext parseContext) throws InvalidSyntaxException {
+
+        KeyCache keyCache = parseContext.keyCache;
+
+        if (keyCache == null) {
+
+            return parseString(parseContext);
+        }
+
+        byte[] bytes = parseContext.bytes;
+        int start = parseContext.index;
+        int end = getStringEnd(parseContext, start);
+        int hash = 0;
+
+        for (int i = start; i < end; ++i) {
+
+            byte b = bytes[i];
+
+            if (b == '"') {
+
+                parseContext.index = i + 1;
+                return keyCache.get(bytes, start, i - start, hash);
+
+            } else if (b == '\\') {
+
+                break; // names with escapes are not cached
+            }
+
+            hash = 31 * hash + b;
+        }
+
+        return parseString(parseContext);
+    }
+
+    // end is where the string has to be closed, see getStringEnd
+
+    private static String parseEscapedString(ParseContext parseContext, StringBuilder sb, int end) throws InvalidSyntaxException {
+
+        byte[] bytes = parseContext.bytes;
+
+        while (true) {
+
+            int runEnd = indexOfQuoteOrBackslash(bytes, parseContext.index, end);
+
+            appendUTF8(sb, bytes, parseContext.index, runEnd);
+            parseContext.index = runEnd;
+
+            if (parseContext.index == end) {
+
+                break;
+            }
+
+            byte c = bytes[parseContext.index++];
+
+            if (c == '"') {
+
+                return sb.toString();
+
+            } else { // a backslash
+
+                if (parseContext.index == end) {
+
+                    break;
+                }
+
+                c = bytes[parseContext.index++];
+
+                if (c == '"') {
+
+                    sb.append('"');
+
+                } else if (c == '\\') {
+
+                    sb.append('\\');
+
+                } else if (c == '/') {
+
+                    sb.append('/');
+
+                } else if (c == 'b') {
+
+                    sb.append('\b');
+
+                } else if (c == 'f') {
+
+                    sb.append('\f');
+
+                } else if (c == 'n') {
+
+                    sb.append('\n');
+
+                } else if (c == 'r') {
+
+                    sb.append('\r');
+
+                } else if (c == 't') {
+
+                    sb.append('\t');
+
+                } else if (c == 'u') {
+
+                    int remainingLength = end - parseContext.index;
+
+                    if (remainingLength >= 4) {
+
+                        sb.append((char)parseHex4(bytes, parseContext.index));
+
+                        parseContext.index += 4;
+
+                    } else {
+
+                        break;
+                    }
+
+                } else {
+
+                    throw new InvalidSyntaxException("Invalid escape sequence at char " + parseContext.index);
+                }
+            }
+        }
+
+        throw incompleteString(parseContext, end);
+    }
+
+    private static int parseHex4(byte[] bytes, int index) throws InvalidSyntaxException {
+
+        int value = 0;
+
+        for (int i = index; i < index + 4; ++i) {
+
+            int digit = Character.digit(bytes[i], 16);
+
+            if (digit == -1) {
+
+                throw new InvalidSyntaxException("Invalid unicode escape sequence at char " + i);
+            }
+
+            value = (value << 4) | digit;
+        }
+
+        return value;
+    }
+
+    private static void appendUTF8(StringBuilder sb, byte[] bytes, int from, int to) {
+
+        int index = from;
+
+        while (index < to) {
+
+            byte b = bytes[index];
+
+            if (b >= 0) {
+
+                sb.append((char)b);
+                index++;
+
+            } else {
+
+                index = appendUTF8Sequence(sb, bytes, index, to);
+            }
+        }
+    }
+
+    // decodes the multi-byte UTF-8 sequence starting at index and returns the index after it,
+    // malformed sequences are replaced with U+FFFD just like new String(bytes, UTF_8) does
+
+    private static int appendUTF8Sequence(StringBuilder sb, byte[] bytes, int index, int end) {
+
+        int b = bytes[index] & 0xFF;
+        int length;
+        int codePoint;
+
+        if (b >= 0xC2 && b <= 0xDF) {
+
+            length = 2;
+            codePoint = b & 0x1F;
+
+        } else if (b >= 0xE0 && b <= 0xEF) {
+
+            length = 3;
+            codePoint = b & 0x0F;
+
+        } else if (b >= 0xF0 && b <= 0xF4) {
+
+            length = 4;
+            codePoint = b & 0x07;
+
+        } else {
+
+            sb.append('\uFFFD');
+            return index + 1;
+        }
+
+        if (end - index < length) {
+
+            sb.append('\uFFFD');
+            return index + 1;
+        }
+
+        for (int i = 1; i < length; ++i) {
+
+            int continuation = bytes[index + i] & 0xFF;
+
+            if ((continuation & 0xC0) != 0x80) {
+
+                sb.append('\uFFFD');
+                return index + i;
+            }
+
+            codePoint = (codePoint << 6) | (continuation & 0x3F);
+        }
+
+        if ((length == 3 && (codePoint < 0x800 || (codePoint >= 0xD800 && codePoint <= 0xDFFF))) || (length == 4 && (codePoint < 0x10000 || codePoint > 0x10FFFF))) {
+
+            sb.append('\uFFFD');
+            return index + length;
+        }
+
+        sb.appendCodePoint(codePoint);
+
+        return index + length;
+    }
+
+    private static Element parseNumberElement(ParseContext parseContext) throws InvalidSyntaxException {
+
+        parseContext.index = parseContext.tokenIndex;
+
+        int lastNumberCharacterIndex = getNumberEnd(parseContext, parseContext.index);
+
+        String number = new String(parseContext.bytes, parseContext.index, lastNumberCharacterIndex - parseContext.index, StandardCharsets.ISO_8859_1);
+
+        Element numberElement = createNumberElement(number, parseContext.index);
+
+        parseContext.index = lastNumberCharacterIndex;
+
+        return numberElement;
+    }
+
+    // returns the end of the run of number characters starting at start, which is only
+    // scanned up to maxNumberLength characters
+
+    private static int getNumberEnd(ParseContext parseContext, int start) throws InvalidSyntaxException {
+
+        byte[] bytes = parseContext.bytes;
+        int maxNumberLength = parseContext.maxNumberLength;
+        int end = (parseContext.end - start > maxNumberLength)? start + maxNumberLength + 1 : parseContext.end;
+        int i = start + 1;
+
+        while (i < end && (CHARACTER_CLASSES[bytes[i] & 0xFF] & NUMBER_CHARACTER) != 0) {
+
+            i++;
+        }
+
+        if (i - start > maxNumberLength) {
+
+            throw new InvalidSyntaxException("Maximum number length (" + maxNumberLength + ") exceeded at char " + start);
+        }
+
+        return i;
+    }
+
+    // the Number grammar shared by every parser: -?digits(.digits)?([eE][+-]?digits)?
+
+    private static boolean isValidNumber(byte[] bytes, int start, int end) {
+
+        int i = start;
+
+        if (i < end && bytes[i] == '-') { i++; }
+
+        int digitsStart = i;
+
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') { i++; }
+
+        if (i == digitsStart) { return false; }
+
+        if (i < end && bytes[i] == '.') {
+
+            int fractionStart = ++i;
+
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') { i++; }
+
+            if (i == fractionStart) { return false; }
+        }
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+
+            if (++i < end && (bytes[i] == '+' || bytes[i] == '-')) { i++; }
+
+            int exponentStart = i;
+
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') { i++; }
+
+            if (i == exponentStart) { return false; }
+        }
+
+        return i == end;
+    }
+
+    // validates the Number grammar and keeps the source text as value, the long or double
+    // value is only decoded when it is asked for, see Element.getValueAsLong
+
+    private static Element createNumberElement(String number, long position) throws InvalidSyntaxException {
+
+        Element numberElement = new Element(ElementType.Number, "");
+
+        setNumberValue(numberElement, number, position);
+
+        return numberElement;
+    }
+
+    private static void setNumberValue(Element numberElement, String number, long position) throws InvalidSyntaxException {
+
+        if (!isValidNumber(number)) {
+
+            throw new InvalidSyntaxException("Invalid number (" + number + ") at char " + position);
+        }
+
+        numberElement.value = number;
+    }
+
+    private static boolean isValidNumber(String number) {
+
+        int length = number.length();
+        int i = 0;
+
+        if (i < length && number.charAt(i) == '-') { i++; }
+
+        int digitsStart = i;
+
+        while (i < length && number.charAt(i) >= '0' && number.charAt(i) <= '9') { i++; }
+
+        if (i == digitsStart) { return false; }
+
+        if (i < length && number.charAt(i) == '.') {
+
+            int fractionStart = ++i;
+
+            while (i < length && number.charAt(i) >= '0' && number.charAt(i) <= '9') { i++; }
+
+            if (i == fractionStart) { return false; }
+        }
+
+        if (i < length && (number.charAt(i) == 'e' || number.charAt(i) == 'E')) {
+
+            if (++i < length && (number.charAt(i) == '+' || number.charAt(i) == '-')) { i++; }
+
+            int exponentStart = i;
+
+            while (i < length && number.charAt(i) >= '0' && number.charAt(i) <= '9') { i++; }
+
+            if (i == exponentStart) { return false; }
+        }
+
+        return i == length;
+    }
+
+    private static long doubleToLong(double number, long defaultValue) {
+
+        if (number == Math.rint(number) && number >= -0x1p63 && number < 0x1p63) {
+
+            return (long)number;
+        }
+
+        return defaultValue;
+    }
+
+    // reads the next token in a single forward pass, the first byte is classified by a
+    // lookup table and the index is left after the token (after the opening quote for
+    // Strings and after the first char for Numbers). An unknown byte is not consumed
+
+    private static Token getNextToken(ParseContext parseContext) {
+
+        byte[] bytes = parseContext.bytes;
+        int index = parseContext.index;
+        int end = parseContext.end;
+
+        while (index < end && CHARACTER_CLASSES[bytes[index] & 0xFF] == WHITESPACE_CHARACTER) {
+
+            index++;
+        }
+
+        parseContext.tokenIndex = index;
+
+        if (index == end) {
+
+            parseContext.index = index;
+            return Token.EndOrUnknown;
+        }
+
+        Token token = FIRST_CHARACTER_TOKENS[bytes[index] & 0xFF];
+
+        if (token == Token.EndOrUnknown) {
+
+            parseContext.index = index;
+            return token;
+
+        } else if (token == Token.True || token == Token.False || token == Token.Null) {
+
+            String literal = (token == Token.True)? "true" : (token == Token.False)? "false" : "null";
+
+            if (end - index < literal.length()) {
+
+                parseContext.index = index;
+                return Token.EndOrUnknown;
+            }
+
+            for (int i = 1; i < literal.length(); ++i) {
+
+                if (bytes[index + i] != literal.charAt(i)) {
+
+                    parseContext.index = index;
+                    return Token.EndOrUnknown;
+                }
+            }
+
+            parseContext.index = index + literal.length();
+            return token;
+        }
+
+        parseContext.index = index + 1;
+        return token;
+    }
+
+    //
+    // JsonPath
+    // A compiled RFC 6901 JSON Pointer ("/payload/items/3/price") or JSONPath subset
+    // ("$.payload.items[3].price", "$.items[*].id", "$['a b'][1:3]", "$.items[-1]")
+    // that is evaluated straight on the UTF-8 input. Only the containers on the way
+    // to a match are walked, every other value is skipped by bracket matching, and
+    // no Elements or Strings are created unless a member name contains escapes.
+    // select() evaluates up to 64 paths in a single pass. NOTE: just like parseLazy,
+    // syntax errors inside skipped values are not detected
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public interface PathListener {
+
+        // called with the bounds of every value matched by paths[path], a value that is
+        // matched by a path and also contains matches of longer paths is reported after
+        // those. Return false to stop the evaluation
+
+        boolean onMatch(int path, byte[] bytes, int start, int end);
+    }
+
+    public static final class JsonPath {
+
+        private static final byte NAME = 0;			// also matches an Array item if the name is an index (JSON Pointer)
+        private static final byte INDEX = 1;
+        private static final byte WILDCARD = 2;
+        private static final byte SLICE = 3;
+
+        private static final int NO_INDEX = Integer.MIN_VALUE;
+        private static final int STOPPED = -2;
+
+        private final String expression;
+        private final byte[] kinds;
+        private final byte[][] names;
+        private final int[] starts;					// the index of INDEX and NAME, the start of SLICE
+        private final int[] ends;
+        private final int[] steps;
+
+        private JsonPath(String expression, List<Object> parts, boolean isPointer) {
+
+            int length = parts.size();
+
+            this.expression = expression;
+            this.kinds = new byte[length];
+            this.names = new byte[length][];
+            this.starts = new int[length];
+            this.ends = new int[length];
+            this.steps = new int[length];
+
+            for (int i = 0; i < length; ++i) {
+
+                Object part = parts.get(i);
+
+                if (part instanceof String) {
+
+                    kinds[i] = NAME;
+                    names[i] = ((String)part).getBytes(StandardCharsets.UTF_8);
+                    starts[i] = isPointer? parseArrayIndex((String)part) : NO_INDEX;
+
+                } else {
+
+                    int[] bounds = (int[])part;
+
+                    kinds[i] = (byte)bounds[0];
+                    starts[i] = bounds[1];
+                    ends[i] = bounds[2];
+                    steps[i] = bounds[3];
+                }
+            }
+        }
+
+        public static JsonPath compile(String expression) {
+
+            if (expression == null) {
+
+                throw new IllegalArgumentException("The path expression cannot be null");
+            }
+
+            List<Object> parts = new ArrayList<Object>();
+            boolean isPointer = expression.isEmpty() || expression.charAt(0) == '/';
+
+            if (isPointer) {
+
+                compilePointer(expression, parts);
+
+            } else if (expression.charAt(0) == '$') {
+
+                compileJsonPath(expression, parts);
+
+            } else {
+
+                throw new IllegalArgumentException("Invalid path " + expression + ", expected a JSON Pointer (/a/0) or a JSONPath ($.a[0])");
+            }
+
+            return new JsonPath(expression, parts, isPointer);
+        }
+
+        // a JSON Pointer token selects an Array item if it is 0 or a number without leading zeros
+
+        private static int parseArrayIndex(String token) {
+
+            if (token.isEmpty() || token.length() > 9 || (token.charAt(0) == '0' && token.length() > 1)) {
+
+                return NO_INDEX;
+            }
+
+            int index = 0;
+
+            for (int i = 0; i < token.length(); ++i) {
+
+                char c = token.charAt(i);
+
+                if (c < '0' || c > '9') {
+
+                    return NO_INDEX;
+                }
+
+                index = index * 10 + (c - '0');
+            }
+
+            return index;
+        }
+
+        private static void compilePointer(String expression, List<Object> parts) {
+
+            int index = 0;
+
+            while (index < expression.length()) {
+
+                int tokenEnd = expression.indexOf('/', index + 1);
+
+                if (tokenEnd == -1) { tokenEnd = expression.length(); }
+
+                StringBuilder token = new StringBuilder();
+
+                for (int i = index + 1; i < tokenEnd; ++i) {
+
+                    char c = expression.charAt(i);
+
+                    if (c == '~') {
+
+                        char escaped = (i + 1 < tokenEnd)? expression.charAt(++i) : ' ';
+
+                        if (escaped != '0' && escaped != '1') { throw new IllegalArgumentException("Invalid escape in " + expression + " at char " + i + ", expected ~0 or ~1"); }
+
+                        token.append(escaped == '0'? '~' : '/');
+
+                    } else {
+
+                        token.append(c);
+                    }
+                }
+
+                parts.add(token.toString());
+                index = tokenEnd;
+            }
+        }
+
+        private static void compileJsonPath(String expression, List<Object> parts) {
+
+            int index = 1;
+            int length = expression.length();
+
+            while (index < length) {
+
+                char c = expression.charAt(index);
+
+                if (c == '.') {
+
+                    if (index + 1 < length && expression.charAt(index + 1) == '.') {
+
+                        throw new IllegalArgumentException("Recursive descent (..) is not supported in " + expression);
+
+                    } else if (index + 1 < length && expression.charAt(index + 1) == '*') {
+
+                        parts.add(new int[] { WILDCARD, 0, 0, 0 });
+                        index += 2;
+                        continue;
+                    }
+
+                    int nameEnd = index + 1;
+
+                    while (nameEnd < length && expression.charAt(nameEnd) != '.' && expression.charAt(nameEnd) != '[') {
+
+                        nameEnd++;
+                    }
+
+                    if (nameEnd == index + 1) { throw new IllegalArgumentException("Missing name in " + expression + " at char " + index); }
+
+                    parts.add(expression.substring(index + 1, nameEnd));
+                    index = nameEnd;
+
+                } else if (c == '[') {
+
+                    int close;
+
+                    if (index + 1 < length && (expression.charAt(index + 1) == '\'' || expression.charAt(index + 1) == '"')) {
+
+                        char quote = expression.charAt(index + 1);
+                        StringBuilder name = new StringBuilder();
+
+                        close = index + 2;
+
+                        while (close < length && expression.charAt(close) != quote) {
+
+                            if (expression.charAt(close) == '\\' && close + 1 < length) { close++; }
+
+                            name.append(expression.charAt(close++));
+                        }
+
+                        if (close + 1 >= length || expression.charAt(close + 1) != ']') { throw new IllegalArgumentException("Unterminated name in " + expression + " at char " + index); }
+
+                        parts.add(name.toString());
+                        index = close + 2;
+                        continue;
+                    }
+
+                    close = expression.indexOf(']', index);
+
+                    if (close == -1) { throw new IllegalArgumentException("Missing ] in " + expression + " at char " + index); }
+
+                    parts.add(compileSubscript(expression, expression.substring(index + 1, close).trim()));
+                    index = close + 1;
+
+                } else {
+
+                    throw new IllegalArgumentException("Unexpected character in " + expression + " at char " + index);
+                }
+            }
+        }
+
+        private static int[] compileSubscript(String expression, String subscript) {
+
+            try {
+
+                if (subscript.equals("*")) {
+
+                    return new int[] { WILDCARD, 0, 0, 0 };
+
+                } else if (subscript.indexOf(':') == -1) {
+
+                    return new int[] { INDEX, Integer.parseInt(subscript), 0, 0 };
+                }
+
+                String[] bounds = subscript.split(":", -1);
+
+                if (bounds.length > 3) { throw new IllegalArgumentException("Invalid slice [" + subscript + "] in " + expression); }
+
+                int start = bounds[0].trim().isEmpty()? 0 : Integer.parseInt(bounds[0].trim());
+                int end = bounds[1].trim().isEmpty()? Integer.MAX_VALUE : Integer.parseInt(bounds[1].trim());
+                int step = (bounds.length < 3 || bounds[2].trim().isEmpty())? 1 : Integer.parseInt(bounds[2].trim());
+
+                if (step < 1) { throw new IllegalArgumentException("Only positive slice steps are supported in " + expression); }
+
+                return new int[] { SLICE, start, end, step };
+
+            } catch (NumberFormatException ex) {
+
+                throw new IllegalArgumentException("Invalid subscript [" + subscript + "] in " + expression);
+            }
+        }
+
+        public String getExpression() {
+
+            return expression;
+        }
+
+        @Override
+        public String toString() {
+
+            return expression;
+        }
+
+        // returns the first value matched by this path as an Element or null if there is none
+
+        public Element selectFirst(String json) throws InvalidSyntaxException {
+
+            return selectFirst(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public Element selectFirst(byte[] utf8) throws InvalidSyntaxException {
+
+            final int[] bounds = { -1, -1 };
+
+            select(utf8, 0, utf8.length, new JsonPath[] { this }, new PathListener() {
+
+                @Override
+                public boolean onMatch(int path, byte[] bytes, int start, int end) {
+
+                    bounds[0] = start;
+                    bounds[1] = end;
+
+                    return false;
+                }
+            });
+
+            return (bounds[0] == -1)? null : forCurrentThread().parse(utf8, bounds[0], bounds[1] - bounds[0]);
+        }
+
+        public List<Element> selectAll(String json) throws InvalidSyntaxException {
+
+            return selectAll(json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public List<Element> selectAll(byte[] utf8) throws InvalidSyntaxException {
+
+            final List<int[]> matches = new ArrayList<int[]>();
+
+            select(utf8, 0, utf8.length, new JsonPath[] { this }, new PathListener() {
+
+                @Override
+                public boolean onMatch(int path, byte[] bytes, int start, int end) {
+
+                    matches.add(new int[] { start, end });
+
+                    return true;
+                }
+            });
+
+            AweformJSON parser = forCurrentThread();
+            List<Element> elements = new ArrayList<Element>(matches.size());
+
+            for (int[] match : matches) {
+
+                elements.add(parser.parse(utf8, match[0], match[1] - match[0]));
+            }
+
+            return elements;
+        }
+
+        // evaluates all paths in one pass over utf8 and reports the bounds of every match
+
+        public static void select(byte[] utf8, int offset, int length, JsonPath[] paths, PathListener listener) throws InvalidSyntaxException {
+
+            if (paths.length > 64) { throw new IllegalArgumentException("At most 64 paths can be evaluated in one pass"); }
+
+            int end = offset + length;
+            int index = skipWhitespace(utf8, offset, end);
+
+            if (index == end) {
+
+                throw new InvalidSyntaxException("Unexpected end of input at char " + index);
+            }
+
+            long activePaths = (paths.length == 64)? -1L : (1L << paths.length) - 1;
+
+            evaluate(utf8, index, end, paths, 0, activePaths, listener);
+        }
+
+        // index is the start of a value that is at depth of all activePaths, returns the
+        // index after the value or STOPPED
+
+        private static int evaluate(byte[] bytes, int index, int end, JsonPath[] paths, int depth, long activePaths, PathListener listener) throws InvalidSyntaxException {
+
+            long matchedPaths = 0;
+            long descendingPaths = 0;
+
+            for (long mask = activePaths; mask != 0; mask &= mask - 1) {
+
+                int path = Long.numberOfTrailingZeros(mask);
+
+                if (paths[path].kinds.length == depth) {
+
+                    matchedPaths |= 1L << path;
+
+                } else {
+
+                    descendingPaths |= 1L << path;
+                }
+            }
+
+            int start = index;
+            byte c = bytes[index];
+
+            if (descendingPaths != 0 && c == '{') {
+
+                index = evaluateObject(bytes, index, end, paths, depth, descendingPaths, listener);
+
+            } else if (descendingPaths != 0 && c == '[') {
+
+                index = evaluateArray(bytes, index, end, paths, depth, descendingPaths, listener);
+
+            } else {
+
+                index = skipValue(bytes, index, end);
+
+                if (index == -1) { throw new InvalidSyntaxException("Found an incomplete value at char " + start); }
+            }
+
+            if (index == STOPPED) {
+
+                return STOPPED;
+            }
+
+            for (long mask = matchedPaths; mask != 0; mask &= mask - 1) {
+
+                if (!listener.onMatch(Long.numberOfTrailingZeros(mask), bytes, start, index)) {
+
+                    return STOPPED;
+                }
+            }
+
+            return index;
+        }
+
+        private static int evaluateObject(byte[] bytes, int index, int end, JsonPath[] paths, int depth, long activePaths, PathListener listener) throws InvalidSyntaxException {
+
+            index = skipWhitespace(bytes, index + 1, end);
+
+            if (index < end && bytes[index] == '}') {
+
+                return index + 1;
+            }
+
+            while (true) {
+
+                if (index == end || bytes[index] != '"') {
+
+                    throw new InvalidSyntaxException("Unexpected character at char " + index + " expected an attribute name");
+                }
+
+                int nameStart = index + 1;
+                int nameEnd = indexOfQuoteOrBackslash(bytes, nameStart, end);
+                long childPaths = 0;
+
+                if (nameEnd < end && bytes[nameEnd] == '"') {
+
+                    for (long mask = activePaths; mask != 0; mask &= mask - 1) {
+
+                        int path = Long.numberOfTrailingZeros(mask);
+
+                        if (paths[path].matchesName(depth, bytes, nameStart, nameEnd)) {
+
+                            childPaths |= 1L << path;
+                        }
+                    }
+
+                    index = nameEnd + 1;
+
+                } else {
+
+                    // escaped names are rare, decode them to compare
+
+                    ParseContext parseContext = new ParseContext();
+                    parseContext.bytes = bytes;
+                    parseContext.index = nameStart;
+                    parseContext.end = end;
+
+                    byte[] name = parseString(parseContext).getBytes(StandardCharsets.UTF_8);
+
+                    for (long mask = activePaths; mask != 0; mask &= mask - 1) {
+
+                        int path = Long.numberOfTrailingZeros(mask);
+
+                        if (paths[path].matchesName(depth, name, 0, name.length)) {
+
+                            childPaths |= 1L << path;
+                        }
+                    }
+
+                    index = parseContext.index;
+                }
+
+                index = skipWhitespace(bytes, index, end);
+
+                if (index == end || bytes[index] != ':') {
+
+                    throw new InvalidSyntaxException("Unexpected character at char " + index + " expected a Colon before the attribute value");
+                }
+
+                index = evaluateChild(bytes, skipWhitespace(bytes, index + 1, end), end, paths, depth, childPaths, listener);
+
+                if (index == STOPPED) {
+
+                    return STOPPED;
+                }
+
+                if (index < end && bytes[index] == ',') {
+
+                    index = skipWhitespace(bytes, index + 1, end);
+
+                } else if (index < end && bytes[index] == '}') {
+
+                    return index + 1;
+
+                } else {
+
+                    throw new InvalidSyntaxException("Unexpected character at char " + index + " expected a Comma or ObjectEnd");
+                }
+            }
+        }
+
+        private static int evaluateArray(byte[] bytes, int index, int end, JsonPath[] paths, int depth, long activePaths, PathListener listener) throws InvalidSyntaxException {
+
+            int start = index;
+            int length = -1;
+
+            index = skipWhitespace(bytes, index + 1, end);
+
+            if (index < end && bytes[index] == ']') {
+
+                return index + 1;
+            }
+
+            for (long mask = activePaths; mask != 0 && length == -1; mask &= mask - 1) {
+
+                if (paths[Long.numberOfTrailingZeros(mask)].needsLength(depth)) {
+
+                    length = countItems(bytes, start, end);
+                }
+            }
+
+            for (int item = 0; ; ++item) {
+
+                long childPaths = 0;
+
+                for (long mask = activePaths; mask != 0; mask &= mask - 1) {
+
+                    int path = Long.numberOfTrailingZeros(mask);
+
+                    if (paths[path].matchesIndex(depth, item, length)) {
+
+                        childPaths |= 1L << path;
+                    }
+                }
+
+                index = evaluateChild(bytes, index, end, paths, depth, childPaths, listener);
+
+                if (index == STOPPED) {
+
+                    return STOPPED;
+                }
+
+                if (index < end && bytes[index] == ',') {
+
+                    index = skipWhitespace(bytes, index + 1, end);
+
+                } else if (index < end && bytes[index] == ']') {
+
+                    return index + 1;
+
+                } else {
+
+                    throw new InvalidSyntaxException("Unexpected character at char " + index + " expected a Comma or ArrayEnd");
+                }
+            }
+        }
+
+        // returns the index after the value and the whitespace following it or STOPPED
+
+        private static int evaluateChild(byte[] bytes, int index, int end, JsonPath[] paths, int depth, long childPaths, PathListener listener) throws InvalidSyntaxException {
+
+            if (index == end) {
+
+                throw new InvalidSyntaxException("Unexpected end of input at char " + index);
+
+            } else if (bytes[index] == ',' || bytes[index] == ']' || bytes[index] == '}') {
+
+                throw new InvalidSyntaxException("Unexpected character at char " + index + " expected a value");
+            }
+
+            if (childPaths != 0) {
+
+                index = evaluate(bytes, index, end, paths, depth + 1, childPaths, listener);
+
+                if (index == STOPPED) {
+
+                    return STOPPED;
+                }
+
+            } else {
+
+                int start = index;
+
+                index = skipValue(bytes, index, end);
+
+                if (index == -1) { throw new InvalidSyntaxException("Found an incomplete value at char " + start); }
+            }
+
+            return skipWhitespace(bytes, index, end);
+        }
+
+        private static int countItems(byte[] bytes, int index, int end) throws InvalidSyntaxException {
+
+            int count = 0;
+
+            index = skipWhitespace(bytes, index + 1, end);
+
+            while (index < end && bytes[index] != ']') {
+
+                int start = index;
+
+                index = skipValue(bytes, index, end);
+
+                if (index == -1) { throw new InvalidSyntaxException("Found an incomplete value at char " + start); }
+
+                count++;
+                index = skipWhitespace(bytes, index, end);
+
+                if (index < end && bytes[index] == ',') {
+
+                    index = skipWhitespace(bytes, index + 1, end);
+                }
+            }
+
+            return count;
+        }
+
+        private boolean matchesName(int depth, byte[] bytes, int start, int end) {
+
+            byte kind = kinds[depth];
+
+            if (kind == WILDCARD) {
+
+                return true;
+
+            } else if (kind != NAME) {
+
+                return false;
+            }
+
+            byte[] name = names[depth];
+
+            if (name.length != end - start) {
+
+                return false;
+            }
+
+            for (int i = 0; i < name.length; ++i) {
+
+                if (name[i] != bytes[start + i]) {
+
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private boolean needsLength(int depth) {
+
+            byte kind = kinds[depth];
+
+            return (kind == INDEX && starts[depth] < 0) || (kind == SLICE && (starts[depth] < 0 || ends[depth] < 0));
+        }
+
+        private boolean matchesIndex(int depth, int item, int length) {
+
+            byte kind = kinds[depth];
+
+            if (kind == WILDCARD) {
+
+                return true;
+
+            } else if (kind == NAME) {
+
+                return starts[depth] == item;
+
+            } else if (kind == INDEX) {
+
+                return item == ((starts[depth] < 0)? starts[depth] + length : starts[depth]);
+            }
+
+            int start = (starts[depth] < 0)? Math.max(0, starts[depth] + length) : starts[depth];
+            int end = (ends[depth] < 0)? ends[depth] + length : ends[depth];
+
+            return item >= start && item < end && (item - start) % steps[depth] == 0;
+        }
+    }
+
+    //
+    // Projection
+    // The attributes to keep when parsing with parse(json, projection), written as dotted
+    // paths: Projection.of("id", "user.name", "items.price"). Arrays are transparent, so
+    // "items.price" keeps the price of every item of items, and a path that ends at an
+    // Object or Array keeps all of its content
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public static final class Projection {
+
+        private static final Projection EXCLUDED = new Projection();
+
+        private final HashMap<String, Projection> attributes = new HashMap<String, Projection>();
+        private boolean isComplete;
+
+        private Projection() { }
+
+        public static Projection of(String... paths) {
+
+            Projection projection = new Projection();
+
+            for (String path : paths) {
+
+                if (path == null || path.isEmpty()) { throw new IllegalArgumentException("A projection path cannot be empty"); }
+
+                Projection node = projection;
+
+                for (String name : path.split("\\.", -1)) {
+
+                    if (name.isEmpty()) { throw new IllegalArgumentException("Invalid projection path " + path); }
+
+                    node = node.attributes.computeIfAbsent(name, key -> new Projection());
+                }
+
+                node.isComplete = true;
+            }
+
+            return projection;
+        }
+
+        // the Projection of the attribute name of an Object with the given Projection, null
+        // when the attribute is kept completely and EXCLUDED when it is skipped
+
+        static Projection select(Projection projection, String name) {
+
+            if (projection == null) {
+
+                return null;
+            }
+
+            Projection attributeProjection = projection.attributes.get(name);
+
+            if (attributeProjection == null) {
+
+                return EXCLUDED;
+            }
+
+            return attributeProjection.isComplete? null : attributeProjection;
+        }
+    }
+
+    //
+    // NDJSON
+    // Parses newline delimited JSON (JSON Lines) in parallel. The input is read in large
+    // blocks that are cut after their last newline, which is always safe because a raw
+    // newline cannot appear inside a JSON String, and every block is parsed on the
+    // executor while the next ones are read. Lines come back in input order through a
+    // Stream of JsonLines, a line with a syntax error only fails that line
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public static final class JsonLine {
+
+        private final long lineNumber;
+        private final Element element;
+        private final InvalidSyntaxException error;
+
+        private JsonLine(long lineNumber, Element element, InvalidSyntaxException error) {
+
+            this.lineNumber = lineNumber;
+            this.element = element;
+            this.error = error;
+        }
+
+        // 1 based, blank lines are counted but not returned
+
+        public long getLineNumber() {
+
+            return lineNumber;
+        }
+
+        // null if the line could not be parsed
+
+        public Element getElement() {
+
+            return element;
+        }
+
+        public InvalidSyntaxException getError() {
+
+            return error;
+        }
+
+        public boolean isValid() {
+
+            return error == null;
+        }
+    }
+
+    private static final class JsonLineBlock {
+
+        final long[] lineOffsets;					// line number of each entry, relative to the block
+        final Element[] elements;
+        final InvalidSyntaxException[] errors;
+        final int count;
+        final int lineCount;
+
+        JsonLineBlock(long[] lineOffsets, Element[] elements, InvalidSyntaxException[] errors, int count, int lineCount) {
+
+            this.lineOffsets = lineOffsets;
+            this.elements = elements;
+            this.errors = errors;
+            this.count = count;
+            this.lineCount = lineCount;
+        }
+    }
+
+    private final class JsonLineIterator implements Iterator<JsonLine> {
+
+        private final InputStream inputStream;
+        private final ExecutorService executor;
+        private final int blockSize;
+        private final int maxBlocksInFlight;
+        private final ThreadLocal<AweformJSON> parsers;
+        private final ArrayDeque<Future<JsonLineBlock>> blocks = new ArrayDeque<Future<JsonLineBlock>>();
+        private byte[] remainder = new byte[0];
+        private boolean isEndOfInput;
+        private JsonLineBlock block;
+        private int blockIndex;
+        private long firstLineNumber = 1;
+
+        JsonLineIterator(InputStream inputStream, ExecutorService executor, int blockSize, int maxBlocksInFlight) {
+
+            this.inputStream = inputStream;
+            this.executor = executor;
+            this.blockSize = blockSize;
+            this.maxBlocksInFlight = maxBlocksInFlight;
+
+            this.parsers = createWorkerParsers(maxDepth);
+        }
+
+        // once hasNext() failed or the Stream was closed the blocks still in flight are
+        // cancelled and the iterator is exhausted
+
+        @Override
+        public boolean hasNext() {
+
+            try {
+
+                return advance();
+
+            } catch (RuntimeException | Error ex) {
+
+                close();
+                throw ex;
+            }
+        }
+
+        void close() {
+
+            isEndOfInput = true;
+            block = null;
+
+            for (Future<JsonLineBlock> pendingBlock : blocks) {
+
+                pendingBlock.cancel(false);
+            }
+
+            blocks.clear();
+        }
+
+        private boolean advance() {
+
+            while (block == null || blockIndex == block.count) {
+
+                if (block != null) {
+
+                    firstLineNumber += block.lineCount;
+                    block = null;
+                }
+
+                fillBlocks();
+
+                if (blocks.isEmpty()) {
+
+                    return false;
+                }
+
+                try {
+
+                    block = blocks.poll().get();
+                    blockIndex = 0;
+
+                } catch (InterruptedException ex) {
+
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while parsing JSON lines", ex);
+
+                } catch (ExecutionException ex) {
+
+                    throw new IllegalStateException("Failed to parse JSON lines", ex.getCause());
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public JsonLine next() {
+
+            if (!hasNext()) {
+
+                throw new NoSuchElementException();
+            }
+
+            int i = blockIndex++;
+
+            return new JsonLine(firstLineNumber + block.lineOffsets[i], block.elements[i], block.errors[i]);
+        }
+
+        private void fillBlocks() {
+
+            while (!isEndOfInput && blocks.size() < maxBlocksInFlight) {
+
+                final byte[] bytes = readBlock();
+                final int length = bytes.length - remainder.length;
+
+                if (length > 0) {
+
+                    blocks.add(executor.submit(() -> parseBlock(parsers.get(), bytes, length)));
+                }
+            }
+        }
+
+        // returns the next block of complete lines, the partial line at the end of the
+        // block (if any) is kept in remainder and also left at the end of the returned array
+
+        private byte[] readBlock() {
+
+            byte[] bytes = Arrays.copyOf(remainder, Math.max(blockSize, remainder.length * 2));
+            int length = remainder.length;
+            int searchFrom = length;
+
+            try {
+
+                while (true) {
+
+                    int count = inputStream.read(bytes, length, bytes.length - length);
+
+                    if (count == -1) {
+
+                        isEndOfInput = true;
+                        remainder = new byte[0];
+
+                        return Arrays.copyOf(bytes, length);
+                    }
+
+                    length += count;
+
+                    if (length == bytes.length) {
+
+                        for (int i = length - 1; i >= searchFrom; --i) {
+
+                            if (bytes[i] == '\n') {
+
+                                remainder = Arrays.copyOfRange(bytes, i + 1, length);
+
+                                return bytes;
+                            }
+                        }
+
+                        // a single line longer than the block
+
+                        searchFrom = length;
+                        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    }
+                }
+
+            } catch (IOException ex) {
+
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    // parses the lines in bytes[0, length), the last line does not need a newline
+
+    private static JsonLineBlock parseBlock(AweformJSON parser, byte[] bytes, int length) {
+
+        int capacity = 16;
+        long[] lineOffsets = new long[capacity];
+        Element[] elements = new Element[capacity];
+        InvalidSyntaxException[] errors = new InvalidSyntaxException[capacity];
+        int count = 0;
+        int lineCount = 0;
+        int start = 0;
+
+        while (start < length) {
+
+            int end = start;
+
+            while (end < length && bytes[end] != '\n') {
+
+                end++;
+            }
+
+            int first = skipWhitespace(bytes, start, end);
+
+            if (first < end) {
+
+                if (count == capacity) {
+
+                    capacity *= 2;
+                    lineOffsets = Arrays.copyOf(lineOffsets, capacity);
+                    elements = Arrays.copyOf(elements, capacity);
+                    errors = Arrays.copyOf(errors, capacity);
+                }
+
+                lineOffsets[count] = lineCount;
+
+                try {
+
+                    elements[count] = parser.parseLine(bytes, start, end);
+
+                } catch (InvalidSyntaxException ex) {
+
+                    errors[count] = ex;
+                }
+
+                count++;
+            }
+
+            lineCount++;
+            start = end + 1;
+        }
+
+        return new JsonLineBlock(lineOffsets, elements, errors, count, lineCount);
+    }
+
+    private Element parseLine(byte[] bytes, int start, int end) throws InvalidSyntaxException {
+
+        Element element;
+        int next;
+
+        checkInputLength(0, end - start);
+
+        ParseContext parseContext = acquireParseContext();
+        parseContext.bytes = bytes;
+        parseContext.index = start;
+        parseContext.end = end;
+
+        try {
+
+            element = parseRootElement(parseContext, null);
+            next = skipWhitespace(bytes, parseContext.index, end);
+
+        } catch (InvalidSyntaxException ex) {
+
+            // positions in the message are relative to the block, parse the line on its
+            // own to report them relative to the line (errors are rare so the copy is fine)
+
+            return parse(Arrays.copyOfRange(bytes, start, end));
+
+        } finally {
+
+            parseContext.reset();
+        }
+
+        if (next != end) {
+
+            throw new InvalidSyntaxException("Unexpected data after the value at char " + (next - start));
+        }
+
+        return element;
+    }
+
+    // reads NDJSON from inputStream and parses blocks of about blockSize bytes on executor,
+    // closing the Stream cancels the blocks that are still queued and closes inputStream
+
+    public Stream<JsonLine> parseLines(InputStream inputStream, ExecutorService executor, int blockSize) {
+
+        if (blockSize < 1) { throw new IllegalArgumentException("The block size must be at least 1"); }
+
+        int maxBlocksInFlight = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+        JsonLineIterator iterator = new JsonLineIterator(inputStream, executor, blockSize, maxBlocksInFlight);
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+
+            iterator.close();
+
+            try {
+
+                inputStream.close();
+
+            } catch (IOException ex) {
+
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    public Stream<JsonLine> parseLines(InputStream inputStream) {
+
+        return parseLines(inputStream, ForkJoinPool.commonPool(), 1 << 20);
+    }
+
+    public Stream<JsonLine> parseLines(Path path) throws IOException {
+
+        return parseLines(Files.newInputStream(path));
+    }
+
+    //
+    // Parallel parsing
+    // parseParallel() parses a large top level Array on several threads. A structural
+    // pre-scan finds the item boundaries by bracket matching only (Strings are skipped
+    // eight bytes at a time) and cuts the items into chunks of roughly equal size that
+    // are then fully parsed on the executor. The result is identical to parse(), and when
+    // the input has an error it is parsed again sequentially so the exception is exactly
+    // the one parse() reports. NOTE: the pre-scan runs on the calling thread and reads
+    // the whole input before the first chunk is submitted, so its share of the time (a
+    // fraction of a full parse, smallest for String heavy input) bounds the speedup.
+    // Chunks whose parse is no longer needed after a failure are cancelled
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public Element parseParallel(byte[] utf8) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        return parseParallel(utf8, 0, utf8.length, ForkJoinPool.commonPool());
+    }
+
+    public Element parseParallel(byte[] utf8, int offset, int length, ExecutorService executor) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        if (offset < 0 || length < 0 || offset > utf8.length - length) {
+
+            throw new IndexOutOfBoundsException("Invalid offset (" + offset + ") and length (" + length + ") for a byte array of length " + utf8.length);
+        }
+
+        checkInputLength(offset, length);
+
+        int end = offset + length;
+        int index = skipWhitespace(utf8, offset, end);
+
+        // the chunks are parsed independently, so a total element count can only be
+        // enforced sequentially
+
+        if (length < PARALLEL_PARSE_THRESHOLD || index == end || utf8[index] != '[' || maxDepth == 1 || limits.maxElementCount != Integer.MAX_VALUE) {
+
+            return parse(utf8, offset, length);
+        }
+
+        // pre-scan, every chunk starts with an item and ends with the Comma after its last
+        // item or (the last one) at the closing bracket
+
+        int chunkSize = Math.max(PARALLEL_PARSE_THRESHOLD / 16, length / (8 * Runtime.getRuntime().availableProcessors()));
+        List<Integer> chunkStarts = new ArrayList<Integer>();
+        int arrayEnd;
+
+        index = skipWhitespace(utf8, index + 1, end);
+
+        if (index == end || utf8[index] == ']') {
+
+            return parse(utf8, offset, length);
+        }
+
+        chunkStarts.add(index);
+
+        while (true) {
+
+            index = skipValue(utf8, index, end);
+
+            if (index == -1) {
+
+                return parse(utf8, offset, length); // throws the error of the sequential parse
+            }
+
+            index = skipWhitespace(utf8, index, end);
+
+            if (index < end && utf8[index] == ',') {
+
+                index = skipWhitespace(utf8, index + 1, end);
+
+                if (index == end) {
+
+                    return parse(utf8, offset, length);
+                }
+
+                if (index - chunkStarts.get(chunkStarts.size() - 1) >= chunkSize) {
+
+                    chunkStarts.add(index);
+                }
+
+            } else if (index < end && utf8[index] == ']') {
+
+                arrayEnd = index;
+                break;
+
+            } else {
+
+                return parse(utf8, offset, length);
+            }
+        }
+
+        chunkStarts.add(arrayEnd);
+
+        ThreadLocal<AweformJSON> parsers = createWorkerParsers(maxDepth - 1);
+        List<Future<List<Element>>> chunks = new ArrayList<Future<List<Element>>>();
+
+        Element rootElement = new Element(ElementType.Array, "");
+        rootElement.elements = new ArrayList<Element>();
+
+        try {
+
+            for (int i = 0; i + 1 < chunkStarts.size(); ++i) {
+
+                final int chunkStart = chunkStarts.get(i);
+                final int chunkEnd = chunkStarts.get(i + 1);
+
+                chunks.add(executor.submit(() -> parsers.get().parseItems(utf8, chunkStart, chunkEnd)));
+            }
+
+            for (Future<List<Element>> chunk : chunks) {
+
+                rootElement.elements.addAll(chunk.get());
+            }
+
+        } catch (InterruptedException ex) {
+
+            cancelChunks(chunks);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing in parallel", ex);
+
+        } catch (ExecutionException ex) {
+
+            cancelChunks(chunks);
+
+            // some executors (ForkJoinPool) wrap the exception of the task once more
+
+            for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+
+                if (cause instanceof InvalidSyntaxException) {
+
+                    return parse(utf8, offset, length);
+                }
+            }
+
+            throw new IllegalStateException("Failed to parse in parallel", ex.getCause());
+
+        } catch (RuntimeException ex) {
+
+            cancelChunks(chunks); // e.g. a RejectedExecutionException of a later chunk
+            throw ex;
+        }
+
+        return rootElement;
+    }
+
+    private static void cancelChunks(List<Future<List<Element>>> chunks) {
+
+        for (Future<List<Element>> chunk : chunks) {
+
+            chunk.cancel(false);
+        }
+    }
+
+    // parses the Comma separated items in bytes[start, end)
+
+    private List<Element> parseItems(byte[] bytes, int start, int end) throws InvalidSyntaxException {
+
+        List<Element> items = new ArrayList<Element>();
+        ParseContext parseContext = acquireParseContext();
+
+        try {
+
+            int index = start;
+
+            while (index < end) {
+
+                parseContext.bytes = bytes;
+                parseContext.index = index;
+                parseContext.end = end;
+
+                items.add(parseElement(parseContext, null));
+
+                index = skipWhitespace(bytes, parseContext.index, end);
+
+                if (index < end) {
+
+                    if (bytes[index] != ',') {
+
+                        throw new InvalidSyntaxException("Unexpected character at char " + index + " expected a Comma or ArrayEnd");
+                    }
+
+                    index = skipWhitespace(bytes, index + 1, end);
+                }
+            }
+
+        } finally {
+
+            parseContext.reset();
+        }
+
+        return items;
+    }
+
+    // the workers of parseLines and parseParallel parse with their own AweformJSON,
+    // configured like this one
+
+    private ThreadLocal<AweformJSON> createWorkerParsers(int maxDepth) {
+
+        final KeyCache keyCache = this.keyCache;
+        final ParseLimits limits = this.limits;
+
+        return ThreadLocal.withInitial(() -> {
+
+            AweformJSON parser = new AweformJSON(Thread.currentThread());
+            parser.setLimits(limits.withMaxDepth(maxDepth));
+            parser.keyCache = keyCache;
+
+            return parser;
+        });
+    }
+
+    //
+    // Data binding
+    // parse(json, SomeClass.class) binds straight from the tokens into records, POJOs
+    // (public no argument constructor plus setters or fields), Lists, Sets, arrays,
+    // Maps with String keys, enums, Strings, numbers, Booleans and Elements without
+    // building an Element tree first. The mapper of every class is built once with
+    // MethodHandles and cached, attributes without a matching property are skipped and
+    // properties without an attribute keep their default. Object binds to String,
+    // Long, Double, Boolean, null, List or Map
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private interface TypeMapper {
+
+        // token is the first token of the value, leaves the index after the value
+
+        Object read(AweformJSON parser, ParseContext parseContext, Token token, int depth) throws InvalidSyntaxException;
+    }
+
+    // the mappers of classes are kept by the classes themselves, so they are unloaded with
+    // them. Generic types (List<Item>, Map<String, Item>[]) only go through a small map
+    // that is cleared when it fills up, every PropertyBinding keeps its own mapper anyway
+
+    private static final int MAX_GENERIC_TYPE_MAPPERS = 256;
+
+    private static final ClassValue<TypeMapper> classMappers = new ClassValue<TypeMapper>() {
+
+        @Override
+        protected TypeMapper computeValue(Class<?> type) {
+
+            return createTypeMapper(type);
+        }
+    };
+
+    private static final ConcurrentHashMap<Type, TypeMapper> genericTypeMappers = new ConcurrentHashMap<Type, TypeMapper>();
+
+    public <T> T parse(String json, Class<T> type) throws InvalidSyntaxException {
+
+        if (json == null) { throw new InvalidSyntaxException("Cannot parse a null string"); }
+
+        return parse(json.getBytes(StandardCharsets.UTF_8), type);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T parse(byte[] utf8, Class<T> type) throws InvalidSyntaxException {
+
+        if (utf8 == null) { throw new InvalidSyntaxException("Cannot parse a null byte array"); }
+
+        TypeMapper typeMapper = getTypeMapper(type);
+
+        checkInputLength(0, utf8.length);
+
+        ParseContext parseContext = acquireParseContext();
+        parseContext.bytes = utf8;
+        parseContext.index = 0;
+        parseContext.end = utf8.length;
+
+        try {
+
+            return (T)typeMapper.read(this, parseContext, getNextToken(parseContext), 0);
+
+        } finally {
+
+            parseContext.reset();
+        }
+    }
+
+    private static TypeMapper getTypeMapper(Type type) {
+
+        if (type instanceof Class) {
+
+            return classMappers.get((Class<?>)type);
+        }
+
+        TypeMapper typeMapper = genericTypeMappers.get(type);
+
+        if (typeMapper == null) {
+
+            // not computeIfAbsent, creating a mapper can create the mappers of other types
+
+            typeMapper = createTypeMapper(type);
+
+            if (genericTypeMappers.size() >= MAX_GENERIC_TYPE_MAPPERS) {
+
+                genericTypeMappers.clear();
+            }
+
+            TypeMapper existingTypeMapper = genericTypeMappers.putIfAbsent(type, typeMapper);
+
+            if (existingTypeMapper != null) {
+
+                typeMapper = existingTypeMapper;
+            }
+        }
+
+        return typeMapper;
+    }
+
+    // the class a generic type erases to, List<String>[] becomes List[]
+
+    private static Class<?> getRawClass(Type type) {
+
+        if (type instanceof Class) {
+
+            return (Class<?>)type;
+
+        } else if (type instanceof ParameterizedType) {
+
+            return (Class<?>)((ParameterizedType)type).getRawType();
+
+        } else if (type instanceof GenericArrayType) {
+
+            return Array.newInstance(getRawClass(((GenericArrayType)type).getGenericComponentType()), 0).getClass();
+
+        } else if (type instanceof WildcardType) {
+
+            return getRawClass(((WildcardType)type).getUpperBounds()[0]);
+        }
+
+        return Object.class; // type variables
+    }
+
+    private static TypeMapper createTypeMapper(Type type) {
+
+        if (type instanceof ParameterizedType) {
+
+            ParameterizedType parameterizedType = (ParameterizedType)type;
+            Class<?> rawType = (Class<?>)parameterizedType.getRawType();
+            Type[] typeArguments = parameterizedType.getActualTypeArguments();
+
+            if (Collection.class.isAssignableFrom(rawType)) {
+
+                return createCollectionMapper(rawType, typeArguments[0]);
+
+            } else if (Map.class.isAssignableFrom(rawType)) {
+
+                return createMapMapper(rawType, typeArguments[0], typeArguments[1]);
+            }
+
+            return getTypeMapper(rawType);
+
+        } else if (type instanceof WildcardType) {
+
+            return getTypeMapper(((WildcardType)type).getUpperBounds()[0]);
+
+        } else if (type instanceof GenericArrayType) {
+
+            return createArrayMapper(getRawClass(type), ((GenericArrayType)type).getGenericComponentType());
+
+        } else if (!(type instanceof Class)) {
+
+            return getTypeMapper(Object.class); // type variables
+        }
+
+        Class<?> c = (Class<?>)type;
+
+        if (c == String.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readString(parseContext, token);
+
+        } else if (c == int.class || c == Integer.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : (int)readLong(parseContext, token, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        } else if (c == long.class || c == Long.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readLong(parseContext, token, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        } else if (c == short.class || c == Short.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : (short)readLong(parseContext, token, Short.MIN_VALUE, Short.MAX_VALUE);
+
+        } else if (c == byte.class || c == Byte.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : (byte)readLong(parseContext, token, Byte.MIN_VALUE, Byte.MAX_VALUE);
+
+        } else if (c == double.class || c == Double.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readDouble(parseContext, token);
+
+        } else if (c == float.class || c == Float.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readFloat(parseContext, token);
+
+        } else if (c == boolean.class || c == Boolean.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readBoolean(parseContext, token);
+
+        } else if (c == char.class || c == Character.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readCharacter(parseContext, token);
+
+        } else if (c == BigDecimal.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : new BigDecimal(readNumber(parseContext, token).value);
+
+        } else if (c == BigInteger.class) {
+
+            return (parser, parseContext, token, depth) -> (token == Token.Null)? null : readBigInteger(parseContext, token);
+
+        } else if (c == Element.class) {
+
+            return (parser, parseContext, token, depth) -> {
+
+                parseContext.index = parseContext.tokenIndex;
+
+                return parser.parseElement(parseContext, null);
+            };
+
+        } else if (c == Object.class) {
+
+            return AweformJSON::readNatural;
+
+        } else if (c.isEnum()) {
+
+            return createEnumMapper(c);
+
+        } else if (c.isArray()) {
+
+            return createArrayMapper(c, c.getComponentType());
+
+        } else if (Collection.class.isAssignableFrom(c)) {
+
+            return createCollectionMapper(c, Object.class);
+
+        } else if (Map.class.isAssignableFrom(c)) {
+
+            return createMapMapper(c, String.class, Object.class);
+
+        } else if (c.isPrimitive() || c.isInterface() || Modifier.isAbstract(c.getModifiers())) {
+
+            throw new IllegalArgumentException("Cannot bind JSON to " + c.getName());
+        }
+
+        return new ObjectMapper(c);
+    }
+
+    private static TypeMapper createEnumMapper(Class<?> c) {
+
+        HashMap<String, Object> constants = new HashMap<String, Object>();
+
+        for (Object constant : c.getEnumConstants()) {
+
+            constants.put(((Enum<?>)constant).name(), constant);
+        }
+
+        return (parser, parseContext, token, depth) -> {
+
+            if (token == Token.Null) {
+
+                return null;
+            }
+
+            int position = parseContext.tokenIndex;
+            Object constant = constants.get(readString(parseContext, token));
+
+            if (constant == null) { throw new InvalidSyntaxException("Unknown " + c.getSimpleName() + " constant at char " + position); }
+
+            return constant;
+        };
+    }
+
+    private static TypeMapper createCollectionMapper(Class<?> c, Type itemType) {
+
+        TypeMapper itemMapper = getTypeMapper(itemType);
+        boolean isSet = Set.class.isAssignableFrom(c);
+        boolean isSorted = SortedSet.class.isAssignableFrom(c);
+
+        if (!c.isAssignableFrom(isSorted? TreeSet.class : isSet? LinkedHashSet.class : ArrayList.class)) {
+
+            throw new IllegalArgumentException("Cannot bind JSON to " + c.getName() + ", use List, Set, SortedSet or Collection");
+        }
+
+        return (parser, parseContext, token, depth) -> {
+
+            if (token == Token.Null) {
+
+                return null;
+            }
+
+            Collection<Object> items = isSorted? new TreeSet<Object>() : isSet? new LinkedHashSet<Object>() : new ArrayList<Object>();
+
+            readItems(parser, parseContext, token, depth, itemMapper, items);
+
+            return items;
+        };
+    }
+
+    private static TypeMapper createArrayMapper(Class<?> c, Type itemType) {
+
+        TypeMapper itemMapper = getTypeMapper(itemType);
+        Class<?> componentType = c.getComponentType();
+
+        return (parser, parseContext, token, depth) -> {
+
+            if (token == Token.Null) {
+
+                return null;
+            }
+
+            List<Object> items = new ArrayList<Object>();
+
+            readItems(parser, parseContext, token, depth, itemMapper, items);
+
+            Object array = Array.newInstance(componentType, items.size());
+
+            for (int i = 0; i < items.size(); ++i) {
+
+                Object item = items.get(i);
+
+                if (item != null || !componentType.isPrimitive()) {
+
+                    Array.set(array, i, item);
+                }
+            }
+
+            return array;
+        };
+    }
+
+    private static TypeMapper createMapMapper(Class<?> c, Type keyType, Type valueType) {
+
+        if (keyType != String.class && keyType != Object.class) { throw new IllegalArgumentException("Cannot bind JSON to a Map with " + keyType.getTypeName() + " keys"); }
+
+        TypeMapper valueMapper = getTypeMapper(valueType);
+        boolean isSorted = SortedMap.class.isAssignableFrom(c);
+
+        if (!c.isAssignableFrom(isSorted? TreeMap.class : LinkedHashMap.class)) {
+
+            throw new IllegalArgumentException("Cannot bind JSON to " + c.getName() + ", use Map or SortedMap");
+        }
+
+        return (parser, parseContext, token, depth) -> {
+
+            if (token == Token.Null) {
+
+                return null;
+            }
+
+            Map<String, Object> attributes = isSorted? new TreeMap<String, Object>() : new LinkedHashMap<String, Object>();
+
+            expectToken(parseContext, token, Token.ObjectStart, depth, parser.maxDepth);
+
+            token = getNextToken(parseContext);
+
+            if (token == Token.ObjectEnd) {
+
+                return attributes;
+            }
+
+            while (true) {
+
+                String name = parseMemberName(parseContext, token);
+
+                attributes.put(name, valueMapper.read(parser, parseContext, getNextToken(parseContext), depth + 1));
+
+                if (nextMember(parseContext, Token.ObjectEnd)) {
+
+                    return attributes;
+                }
+
+                token = getNextToken(parseContext);
+            }
+        };
+    }
+
+    private static void readItems(AweformJSON parser, ParseContext parseContext, Token token, int depth, TypeMapper itemMapper, Collection<Object> items) throws InvalidSyntaxException {
+
+        expectToken(parseContext, token, Token.ArrayStart, depth, parser.maxDepth);
+
+        token = getNextToken(parseContext);
+
+        if (token == Token.ArrayEnd) {
+
+            return;
+        }
+
+        while (true) {
+
+            items.add(itemMapper.read(parser, parseContext, token, depth + 1));
+
+            if (nextMember(parseContext, Token.ArrayEnd)) {
+
+                return;
+            }
+
+            token = getNextToken(parseContext);
+        }
+    }
+
+    // records are created through their canonical constructor, other classes through their
+    // no argument constructor followed by a setter (setName) or field write per attribute
+
+    private static final class ObjectMapper implements TypeMapper {
+
+        private final Class<?> type;
+        private final HashMap<String, PropertyBinding> properties = new HashMap<String, PropertyBinding>();
+        private final MethodHandle constructor;		// (Object[])Object for records, ()Object otherwise
+        private final Object[] defaults;			// the record components of an absent attribute
+
+        ObjectMapper(Class<?> type) {
+
+            this.type = type;
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            try {
+
+                if (type.isRecord()) {
+
+                    RecordComponent[] components = type.getRecordComponents();
+                    Class<?>[] componentTypes = new Class<?>[components.length];
+
+                    defaults = new Object[components.length];
+
+                    for (int i = 0; i < components.length; ++i) {
+
+                        componentTypes[i] = components[i].getType();
+                        defaults[i] = componentTypes[i].isPrimitive()? Array.get(Array.newInstance(componentTypes[i], 1), 0) : null;
+                        properties.put(components[i].getName(), new PropertyBinding(components[i].getGenericType(), i, null, componentTypes[i].isPrimitive()));
+                    }
+
+                    Constructor<?> canonicalConstructor = type.getDeclaredConstructor(componentTypes);
+                    canonicalConstructor.setAccessible(true);
+
+                    constructor = lookup.unreflectConstructor(canonicalConstructor).asSpreader(Object[].class, components.length).asType(MethodType.methodType(Object.class, Object[].class));
+
+                } else {
+
+                    Constructor<?> noArgumentConstructor = type.getDeclaredConstructor();
+                    noArgumentConstructor.setAccessible(true);
+
+                    constructor = lookup.unreflectConstructor(noArgumentConstructor).asType(MethodType.methodType(Object.class));
+                    defaults = null;
+
+                    MethodType setterType = MethodType.methodType(void.class, Object.class, Object.class);
+
+                    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+
+                        for (Field field : c.getDeclaredFields()) {
+
+                            int modifiers = field.getModifiers();
+
+                            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || Modifier.isFinal(modifiers) || properties.containsKey(field.getName())) {
+
+                                continue;
+                            }
+
+                            MethodHandle setter = findSetter(lookup, type, field);
+
+                            if (setter == null) {
+
+                                field.setAccessible(true);
+                                setter = lookup.unreflectSetter(field);
+                            }
+
+                            properties.put(field.getName(), new PropertyBinding(field.getGenericType(), -1, setter.asType(setterType), field.getType().isPrimitive()));
+                        }
+                    }
+                }
+
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+
+                throw new IllegalArgumentException("Cannot bind JSON to " + type.getName() + ": " + ex, ex);
+            }
+        }
+
+        // the public setter of field or null to write the field directly
+
+        private static MethodHandle findSetter(MethodHandles.Lookup lookup, Class<?> type, Field field) {
+
+            String name = "set" + Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+
+            try {
+
+                Method method = type.getMethod(name, field.getType());
+
+                return Modifier.isStatic(method.getModifiers())? null : lookup.unreflect(method);
+
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+
+                return null;
+            }
+        }
+
+        @Override
+        public Object read(AweformJSON parser, ParseContext parseContext, Token token, int depth) throws InvalidSyntaxException {
+
+            if (token == Token.Null) {
+
+                return null;
+            }
+
+            expectToken(parseContext, token, Token.ObjectStart, depth, parser.maxDepth);
+
+            Object[] arguments = (defaults == null)? null : defaults.clone();
+            Object instance = (defaults == null)? create(null) : null;
+
+            token = getNextToken(parseContext);
+
+            if (token != Token.ObjectEnd) {
+
+                while (true) {
+
+                    PropertyBinding property = properties.get(parseMemberName(parseContext, token));
+
+                    token = getNextToken(parseContext);
+
+                    if (property == null) {
+
+                        skipExcludedValue(parseContext, token, depth + 1, parser.maxDepth);
+
+                    } else {
+
+                        Object value = property.getTypeMapper().read(parser, parseContext, token, depth + 1);
+
+                        // null keeps the default of a primitive
+
+                        if (value != null || !property.isPrimitive) {
+
+                            if (arguments != null) {
+
+                                arguments[property.index] = value;
+
+                            } else {
+
+                                setProperty(property, instance, value);
+                            }
+                        }
+                    }
+
+                    if (nextMember(parseContext, Token.ObjectEnd)) {
+
+                        break;
+                    }
+
+                    token = getNextToken(parseContext);
+                }
+            }
+
+            return (arguments == null)? instance : create(arguments);
+        }
+
+        private void setProperty(PropertyBinding property, Object instance, Object value) {
+
+            try {
+
+                property.setter.invokeExact(instance, value);
+
+            } catch (RuntimeException | Error ex) {
+
+                throw ex;
+
+            } catch (Throwable ex) {
+
+                throw new IllegalStateException("Failed to set a property of a " + type.getName(), ex);
+            }
+        }
+
+        private Object create(Object[] arguments) {
+
+            try {
+
+                return (arguments == null)? (Object)constructor.invokeExact() : (Object)constructor.invokeExact(arguments);
+
+            } catch (RuntimeException | Error ex) {
+
+                throw ex;
+
+            } catch (Throwable ex) {
+
+                throw new IllegalStateException("Failed to create a " + type.getName(), ex);
+            }
+        }
+    }
+
+    private static final class PropertyBinding {
+
+        final Type type;
+        final int index;							// the record component
+        final MethodHandle setter;					// (Object, Object)void for other classes
+        final boolean isPrimitive;
+        private TypeMapper typeMapper;				// resolved on first use so classes can refer to themselves
+
+        PropertyBinding(Type type, int index, MethodHandle setter, boolean isPrimitive) {
+
+            this.type = type;
+            this.index = index;
+            this.setter = setter;
+            this.isPrimitive = isPrimitive;
+        }
+
+        TypeMapper getTypeMapper() {
+
+            TypeMapper typeMapper = this.typeMapper;
+
+            if (typeMapper == null) {
+
+                typeMapper = this.typeMapper = AweformJSON.getTypeMapper(type);
+            }
+
+            return typeMapper;
+        }
+    }
+
+    private static void expectToken(ParseContext parseContext, Token token, Token expectedToken, int depth, int maxDepth) throws InvalidSyntaxException {
+
+        if (token != expectedToken) {
+
+            throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected " + expectedToken);
+
+        } else if (depth >= maxDepth) {
+
+            throw new InvalidSyntaxException("Maximum nesting depth (" + maxDepth + ") exceeded at char " + parseContext.tokenIndex);
+        }
+    }
+
+    // reads the Comma or endToken after a value, returns true at endToken
+
+    private static boolean nextMember(ParseContext parseContext, Token endToken) throws InvalidSyntaxException {
+
+        Token token = getNextToken(parseContext);
+
+        if (token == Token.Comma) {
+
+            return false;
+
+        } else if (token == endToken) {
+
+            return true;
+        }
+
+        throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a Comma or " + endToken);
+    }
+
+    private static String readString(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token != Token.String) { throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a String"); }
+
+        return parseString(parseContext);
+    }
+
+    private static Character readCharacter(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        int position = parseContext.tokenIndex;
+        String value = readString(parseContext, token);
+
+        if (value.length() != 1) { throw new InvalidSyntaxException("Expected a single character String at char " + position); }
+
+        return value.charAt(0);
+    }
+
+    private static Boolean readBoolean(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token != Token.True && token != Token.False) { throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a Boolean"); }
+
+        return token == Token.True;
+    }
+
+    private static Element readNumber(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        if (token != Token.Number) { throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a Number"); }
+
+        return parseNumberElement(parseContext);
+    }
+
+    // plain integers are decoded straight from the bytes, anything else (a fraction, an
+    // exponent, an overflow) goes through the regular Number Element
+
+    private static long readLong(ParseContext parseContext, Token token, long min, long max) throws InvalidSyntaxException {
+
+        if (token != Token.Number) { throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex + " expected a Number"); }
+
+        byte[] bytes = parseContext.bytes;
+        int start = parseContext.tokenIndex;
+        int end = parseContext.end;
+        int i = start;
+        boolean isNegative = (bytes[i] == '-');
+
+        if (isNegative) { i++; }
+
+        int digitsStart = i;
+        long negativeValue = 0;
+
+        while (i < end && i - digitsStart < 18 && bytes[i] >= '0' && bytes[i] <= '9') {
+
+            negativeValue = negativeValue * 10 - (bytes[i++] - '0');
+        }
+
+        long number;
+
+        if (i > digitsStart && i - start <= parseContext.maxNumberLength && (i == end || (CHARACTER_CLASSES[bytes[i] & 0xFF] & NUMBER_CHARACTER) == 0)) {
+
+            parseContext.index = i;
+            number = isNegative? negativeValue : -negativeValue;
+
+        } else {
+
+            Element numberElement = parseNumberElement(parseContext);
+
+            number = numberElement.getValueAsLong(Long.MIN_VALUE);
+
+            if (number == Long.MIN_VALUE && !"-9223372036854775808".equals(numberElement.value)) {
+
+                throw new InvalidSyntaxException("The Number (" + numberElement.value + ") at char " + start + " is not an integer that fits a long");
+            }
+        }
+
+        if (number < min || number > max) {
+
+            throw new InvalidSyntaxException("The Number (" + number + ") at char " + start + " is out of range");
+        }
+
+        return number;
+    }
+
+    private static double readDouble(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        return readNumber(parseContext, token).getValueAsDouble(0);
+    }
+
+    // straight from the source text, a float rounded from the double could be off by one ulp
+
+    private static float readFloat(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        return Float.parseFloat(readNumber(parseContext, token).value);
+    }
+
+    private static BigInteger readBigInteger(ParseContext parseContext, Token token) throws InvalidSyntaxException {
+
+        int position = parseContext.tokenIndex;
+
+        try {
+
+            return new BigDecimal(readNumber(parseContext, token).value).toBigIntegerExact();
+
+        } catch (ArithmeticException ex) {
+
+            throw new InvalidSyntaxException("The Number at char " + position + " is not an integer");
+        }
+    }
+
+    // binds to String, Long (Double if it does not fit), Boolean, null, List and Map
+
+    private static Object readNatural(AweformJSON parser, ParseContext parseContext, Token token, int depth) throws InvalidSyntaxException {
+
+        if (token == Token.ObjectStart) {
+
+            return getTypeMapper(Map.class).read(parser, parseContext, token, depth);
+
+        } else if (token == Token.ArrayStart) {
+
+            return getTypeMapper(List.class).read(parser, parseContext, token, depth);
+
+        } else if (token == Token.Number) {
+
+            Element numberElement = parseNumberElement(parseContext);
+            String number = numberElement.value;
+
+            if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+
+                try {
+
+                    return Long.parseLong(number);
+
+                } catch (NumberFormatException ex) {
+
+                    // too large for a long
+                }
+            }
+
+            return numberElement.getValueAsDouble(0);
+        }
+
+        if (token == Token.String) {
+
+            return parseString(parseContext);
+
+        } else if (token == Token.True || token == Token.False) {
+
+            return token == Token.True;
+
+        } else if (token == Token.Null) {
+
+            return null;
+        }
+
+        throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + parseContext.tokenIndex);
+    }
+
+    //
+    // Object writer
+    // write(value, output) serializes records, POJOs (public getters or fields), Maps,
+    // Collections, arrays, enums, Strings, numbers, Booleans and Elements straight to
+    // the output without building an Element tree. The writer of every class is built
+    // once with MethodHandles and cached, it holds the escaped and quoted names of the
+    // properties and reads primitive properties without boxing them. NaN and Infinity
+    // fail with an IllegalArgumentException since JSON cannot represent them
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private static final ClassValue<ClassWriter> classWriters = new ClassValue<ClassWriter>() {
+
+        @Override
+        protected ClassWriter computeValue(Class<?> type) {
+
+            return new ClassWriter(type);
+        }
+    };
+
+    public static String toJSON(Object value) {
+
+        return toJSON(value, JsonStyle.Default);
+    }
+
+    public static String toJSON(Object value, JsonStyle style) {
+
+        StringBuilder sb = new StringBuilder();
+
+        try {
+
+            writeValue(new AppendableOutput(sb), value, style, 0);
+
+        } catch (IOException ex) {
+
+            throw new IllegalStateException(ex); // a StringBuilder never throws
+        }
+
+        return sb.toString();
+    }
+
+    public static void write(Object value, Appendable appendable) throws IOException {
+
+        write(value, appendable, JsonStyle.Default);
+    }
+
+    public static void write(Object value, Appendable appendable, JsonStyle style) throws IOException {
+
+        writeValue(new AppendableOutput(appendable), value, style, 0);
+    }
+
+    // writes the UTF-8 encoded JSON through an internal buffer, the stream itself is
+    // neither flushed nor closed
+
+    public static void write(Object value, OutputStream outputStream) throws IOException {
+
+        write(value, outputStream, JsonStyle.Default);
+    }
+
+    public static void write(Object value, OutputStream outputStream, JsonStyle style) throws IOException {
+
+        UTF8Output output = new UTF8Output(outputStream, null);
+
+        writeValue(output, value, style, 0);
+        output.flush();
+    }
+
+    private static void writeValue(JsonOutput output, Object value, JsonStyle style, int depth) throws IOException {
+
+        if (value == null) {
+
+            output.append("null");
+
+        } else if (value instanceof String) {
+
+            output.append('"');
+            output.appendEscaped((String)value);
+            output.append('"');
+
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+
+            output.appendLong(((Number)value).longValue());
+
+        } else if (value instanceof Double) {
+
+            output.appendDouble(checkFinite((Double)value));
+
+        } else if (value instanceof Float) {
+
+            output.appendFloat(checkFinite((Float)value));
+
+        } else if (value instanceof Number || value instanceof Boolean) {
+
+            output.append(value.toString());
+
+        } else if (value instanceof Character) {
+
+            output.append('"');
+            output.appendEscaped(((Character)value).charValue());
+            output.append('"');
+
+        } else if (value instanceof Enum) {
+
+            output.append('"');
+            output.appendEscaped(((Enum<?>)value).name());
+            output.append('"');
+
+        } else if (value instanceof Element) {
+
+            ((Element)value).writeTo(output, style, depth);
+
+        } else if (value instanceof FrozenElement) {
+
+            ((FrozenElement)value).thaw().writeTo(output, style, depth);
+
+        } else {
+
+            if (depth == DEFAULT_MAX_DEPTH) { throw new IllegalArgumentException("Maximum nesting depth (" + DEFAULT_MAX_DEPTH + ") exceeded, is the object graph cyclic?"); }
+
+            if (value instanceof Map) {
+
+                writeMap(output, (Map<?, ?>)value, style, depth);
+
+            } else if (value instanceof Iterable) {
+
+                writeIterable(output, (Iterable<?>)value, style, depth);
+
+            } else if (value.getClass().isArray()) {
+
+                writeArray(output, value, style, depth);
+
+            } else {
+
+                classWriters.get(value.getClass()).write(output, value, style, depth);
+            }
+        }
+    }
+
+    private static void writeMap(JsonOutput output, Map<?, ?> map, JsonStyle style, int depth) throws IOException {
+
+        boolean isFirst = true;
+
+        output.append('{');
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+
+            if (isFirst) { isFirst = false; } else { output.append((style == JsonStyle.Default)? ", " : ","); }
+
+            if (style == JsonStyle.Pretty) { output.appendNewLine(depth + 1); }
+
+            output.append('"');
+            output.appendEscaped(String.valueOf(entry.getKey()));
+            output.append((style == JsonStyle.Compact)? "\":" : "\": ");
+
+            writeValue(output, entry.getValue(), style, depth + 1);
+        }
+
+        if (style == JsonStyle.Pretty && !isFirst) { output.appendNewLine(depth); }
+
+        output.append('}');
+    }
+
+    private static void writeIterable(JsonOutput output, Iterable<?> items, JsonStyle style, int depth) throws IOException {
+
+        boolean isFirst = true;
+
+        output.append('[');
+
+        for (Object item : items) {
+
+            if (isFirst) { isFirst = false; } else { output.append((style == JsonStyle.Default)? ", " : ","); }
+
+            if (style == JsonStyle.Pretty) { output.appendNewLine(depth + 1); }
+
+            writeValue(output, item, style, depth + 1);
+        }
+
+        if (style == JsonStyle.Pretty && !isFirst) { output.appendNewLine(depth); }
+
+        output.append(']');
+    }
+
+    // JSON has no literal for NaN or Infinity, so they fail instead of producing output
+    // that no parser accepts
+
+    private static double checkFinite(double number) {
+
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+
+            throw new IllegalArgumentException("Cannot write the non finite number " + number + " as JSON");
+        }
+
+        return number;
+    }
+
+    private static float checkFinite(float number) {
+
+        if (Float.isNaN(number) || Float.isInfinite(number)) {
+
+            throw new IllegalArgumentException("Cannot write the non finite number " + number + " as JSON");
+        }
+
+        return number;
+    }
+
+    // primitive arrays are written item by item without boxing
+
+    private static void writeArray(JsonOutput output, Object array, JsonStyle style, int depth) throws IOException {
+
+        int length = Array.getLength(array);
+
+        output.append('[');
+
+        for (int i = 0; i < length; ++i) {
+
+            if (i > 0) { output.append((style == JsonStyle.Default)? ", " : ","); }
+
+            if (style == JsonStyle.Pretty) { output.appendNewLine(depth + 1); }
+
+            if (array instanceof int[]) {
+
+                output.appendLong(((int[])array)[i]);
+
+            } else if (array instanceof long[]) {
+
+                output.appendLong(((long[])array)[i]);
+
+            } else if (array instanceof double[]) {
+
+                output.appendDouble(checkFinite(((double[])array)[i]));
+
+            } else if (array instanceof float[]) {
+
+                output.appendFloat(checkFinite(((float[])array)[i]));
+
+            } else if (array instanceof short[]) {
+
+                output.appendLong(((short[])array)[i]);
+
+            } else if (array instanceof byte[]) {
+
+                output.appendLong(((byte[])array)[i]);
+
+            } else if (array instanceof char[]) {
+
+                output.append('"');
+                output.appendEscaped(((char[])array)[i]);
+                output.append('"');
+
+            } else if (array instanceof boolean[]) {
+
+                output.append(((boolean[])array)[i]? "true" : "false");
+
+            } else if (array instanceof Object[]) {
+
+                writeValue(output, ((Object[])array)[i], style, depth + 1);
+            }
+        }
+
+        if (style == JsonStyle.Pretty && length > 0) { output.appendNewLine(depth); }
+
+        output.append(']');
+    }
+
+    // records are read through their accessors, other classes through a public getter
+    // (getName or isName) or else the field itself
+
+    private static final class ClassWriter {
+
+        private static final byte INT = 0;
+        private static final byte LONG = 1;
+        private static final byte DOUBLE = 2;
+        private static final byte FLOAT = 3;
+        private static final byte BOOLEAN = 4;
+        private static final byte CHAR = 5;
+        private static final byte OTHER = 6;		// anything else, boxed primitives included
+
+        private final byte[] kinds;
+        private final MethodHandle[] getters;		// (Object) returning int, long, double, float, boolean, char or Object
+        private final String[] names;				// "name": (escaped and quoted)
+        private final String[] compactNames;		// "name":
+
+        ClassWriter(Class<?> type) {
+
+            List<String> propertyNames = new ArrayList<String>();
+            List<MethodHandle> propertyGetters = new ArrayList<MethodHandle>();
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            try {
+
+                if (type.isRecord()) {
+
+                    for (RecordComponent component : type.getRecordComponents()) {
+
+                        Method accessor = component.getAccessor();
+                        accessor.setAccessible(true);
+
+                        propertyNames.add(component.getName());
+                        propertyGetters.add(lookup.unreflect(accessor));
+                    }
+
+                } else {
+
+                    List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+
+                    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+
+                        hierarchy.add(0, c);
+                    }
+
+                    for (Class<?> c : hierarchy) {
+
+                        for (Field field : c.getDeclaredFields()) {
+
+                            int modifiers = field.getModifiers();
+
+                            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || propertyNames.contains(field.getName())) {
+
+                                continue;
+                            }
+
+                            MethodHandle getter = findGetter(lookup, type, field);
+
+                            if (getter == null) {
+
+                                field.setAccessible(true);
+                                getter = lookup.unreflectGetter(field);
+                            }
+
+                            propertyNames.add(field.getName());
+                            propertyGetters.add(getter);
+                        }
+                    }
+                }
+
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+
+                throw new IllegalArgumentException("Cannot write a " + type.getName() + " as JSON: " + ex, ex);
+            }
+
+            int count = propertyNames.size();
+
+            kinds = new byte[count];
+            getters = new MethodHandle[count];
+            names = new String[count];
+            compactNames = new String[count];
+
+            for (int i = 0; i < count; ++i) {
+
+                MethodHandle getter = propertyGetters.get(i);
+                Class<?> returnType = getter.type().returnType();
+                StringBuilder sb = new StringBuilder("\"");
+
+                try {
+
+                    new AppendableOutput(sb).appendEscaped(propertyNames.get(i));
+
+                } catch (IOException ex) {
+
+                    throw new IllegalStateException(ex); // a StringBuilder never throws
+                }
+
+                compactNames[i] = sb.append("\":").toString();
+                names[i] = compactNames[i] + " ";
+
+                if (returnType == int.class || returnType == short.class || returnType == byte.class) {
+
+                    kinds[i] = INT;
+                    getters[i] = getter.asType(MethodType.methodType(int.class, Object.class));
+
+                } else if (returnType == long.class || returnType == double.class || returnType == float.class || returnType == boolean.class || returnType == char.class) {
+
+                    kinds[i] = (returnType == long.class)? LONG : (returnType == double.class)? DOUBLE : (returnType == float.class)? FLOAT : (returnType == boolean.class)? BOOLEAN : CHAR;
+                    getters[i] = getter.asType(MethodType.methodType(returnType, Object.class));
+
+                } else {
+
+                    kinds[i] = OTHER;
+                    getters[i] = getter.asType(MethodType.methodType(Object.class, Object.class));
+                }
+            }
+        }
+
+        private static MethodHandle findGetter(MethodHandles.Lookup lookup, Class<?> type, Field field) {
+
+            String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+
+            for (String name : new String[] { "get" + suffix, "is" + suffix }) {
+
+                try {
+
+                    Method method = type.getMethod(name);
+
+                    if (method.getReturnType() == field.getType() && !Modifier.isStatic(method.getModifiers())) {
+
+                        return lookup.unreflect(method);
+                    }
+
+                } catch (NoSuchMethodException | IllegalAccessException ex) {
+
+                    // no usable getter
+                }
+            }
+
+            return null;
+        }
+
+        void write(JsonOutput output, Object value, JsonStyle style, int depth) throws IOException {
+
+            String[] names = (style == JsonStyle.Compact)? compactNames : this.names;
+
+            output.append('{');
+
+            try {
+
+                for (int i = 0; i < kinds.length; ++i) {
+
+                    if (i > 0) { output.append((style == JsonStyle.Default)? ", " : ","); }
+
+                    if (style == JsonStyle.Pretty) { output.appendNewLine(depth + 1); }
+
+                    output.append(names[i]);
+
+                    MethodHandle getter = getters[i];
+                    byte kind = kinds[i];
+
+                    if (kind == INT) {
+
+                        output.appendLong((int)getter.invokeExact(value));
+
+                    } else if (kind == LONG) {
+
+                        output.appendLong((long)getter.invokeExact(value));
+
+                    } else if (kind == DOUBLE) {
+
+                        output.appendDouble(checkFinite((double)getter.invokeExact(value)));
+
+                    } else if (kind == FLOAT) {
+
+                        output.appendFloat(checkFinite((float)getter.invokeExact(value)));
+
+                    } else if (kind == BOOLEAN) {
+
+                        output.append((boolean)getter.invokeExact(value)? "true" : "false");
+
+                    } else if (kind == CHAR) {
+
+                        output.append('"');
+                        output.appendEscaped((char)getter.invokeExact(value));
+                        output.append('"');
+
+                    } else {
+
+                        writeValue(output, (Object)getter.invokeExact(value), style, depth + 1);
+                    }
+                }
+
+            } catch (IOException | RuntimeException | Error ex) {
+
+                throw ex;
+
+            } catch (Throwable ex) {
+
+                throw new IllegalStateException("Failed to read a property of a " + value.getClass().getName(), ex);
+            }
+
+            if (style == JsonStyle.Pretty && kinds.length > 0) { output.appendNewLine(depth); }
+
+            output.append('}');
+        }
+    }
+
+    //
+    // Floating point conversion
+    // parseDouble() converts the text of a Number with Clinger's fast path (exact for up
+    // to 2^53 times a power of ten up to 22) and otherwise with the Eisel-Lemire
+    // algorithm, which needs a single 64 by 128 bit multiplication in most cases. The
+    // rare inputs it cannot decide (and those with more than 19 significant digits) go
+    // to Double.parseDouble, so the result is always bit identical to the JDK.
+    // formatDouble() writes the shortest decimal that rounds back to the same double
+    // (the Schubfach algorithm of Raffaello Giulietti) in the layout of Double.toString
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private static final double[] EXACT_POWERS_OF_TEN = {
+
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // the tables are computed with BigInteger on first use instead of being spelled out
+    // as thousands of literals
+
+    private static final class PowerTables {
+
+        static final int MIN_POWER_OF_FIVE = -342;
+        static final int MAX_POWER_OF_FIVE = 308;
+        static final int MIN_K = -324;
+        static final int MAX_K = 292;
+
+        // 5^q normalized to 128 bits (high and low halves), truncated for q >= 0 and
+        // rounded up for q < 0, for q in [MIN_POWER_OF_FIVE, MAX_POWER_OF_FIVE]
+
+        static final long[] powersOfFive = new long[2 * (MAX_POWER_OF_FIVE - MIN_POWER_OF_FIVE + 1)];
+
+        // g = floor(10^-k 2^-r) + 1 with r chosen so that 2^125 <= 10^-k 2^-r < 2^126,
+        // stored as g1 = g >> 63 and g0 = g mod 2^63, for k in [MIN_K, MAX_K]
+
+        static final long[] powersOfTen = new long[2 * (MAX_K - MIN_K + 1)];
+
+        static {
+
+            BigInteger mask64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+            for (int q = MIN_POWER_OF_FIVE; q <= MAX_POWER_OF_FIVE; ++q) {
+
+                BigInteger c;
+
+                if (q >= 0) {
+
+                    BigInteger power = BigInteger.valueOf(5).pow(q);
+                    int shift = power.bitLength() - 128;
+
+                    c = (shift >= 0)? power.shiftRight(shift) : power.shiftLeft(-shift);
+
+                } else {
+
+                    BigInteger power = BigInteger.valueOf(5).pow(-q);
+                    int z = power.bitLength();
+
+                    if (q >= -27) {
+
+                        c = BigInteger.ONE.shiftLeft(z + 127).divide(power).add(BigInteger.ONE);
+
+                    } else {
+
+                        c = BigInteger.ONE.shiftLeft(2 * z + 128).divide(power).add(BigInteger.ONE);
+                        c = c.shiftRight(Math.max(0, c.bitLength() - 128));
+                    }
+                }
+
+                int index = 2 * (q - MIN_POWER_OF_FIVE);
+
+                powersOfFive[index] = c.shiftRight(64).longValue();
+                powersOfFive[index + 1] = c.and(mask64).longValue();
+            }
+
+            BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+
+            for (int k = MIN_K; k <= MAX_K; ++k) {
+
+                BigInteger g;
+
+                if (k <= 0) {
+
+                    BigInteger power = BigInteger.TEN.pow(-k);
+                    int r = power.bitLength() - 1 - 125;
+
+                    g = ((r >= 0)? power.shiftRight(r) : power.shiftLeft(-r)).add(BigInteger.ONE);
+
+                } else {
+
+                    BigInteger power = BigInteger.TEN.pow(k);
+
+                    g = BigInteger.ONE.shiftLeft(power.bitLength() + 125).divide(power).add(BigInteger.ONE);
+                }
+
+                int index = 2 * (k - MIN_K);
+
+                powersOfTen[index] = g.shiftRight(63).longValue();
+                powersOfTen[index + 1] = g.and(mask63).longValue();
+            }
+        }
+    }
+
+    // falls back to Double.parseDouble for anything that is not a plain JSON Number
+
+    private static double parseDouble(String s) {
+
+        int length = s.length();
+        int i = 0;
+        boolean isNegative = (length > 0 && s.charAt(0) == '-');
+
+        if (isNegative) { i++; }
+
+        long significand = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        int digitsStart = i;
+
+        for (; i < length && s.charAt(i) >= '0' && s.charAt(i) <= '9'; ++i) {
+
+            int digit = s.charAt(i) - '0';
+
+            if (significand != 0 || digit != 0) { significantDigits++; }
+
+            significand = significand * 10 + digit;
+        }
+
+        if (i == digitsStart) {
+
+            return Double.parseDouble(s);
+        }
+
+        if (i < length && s.charAt(i) == '.') {
+
+            int fractionStart = ++i;
+
+            for (; i < length && s.charAt(i) >= '0' && s.charAt(i) <= '9'; ++i) {
+
+                int digit = s.charAt(i) - '0';
+
+                if (significand != 0 || digit != 0) { significantDigits++; }
+
+                significand = significand * 10 + digit;
+            }
+
+            if (i == fractionStart) { return Double.parseDouble(s); }
+
+            exponent = fractionStart - i;
+        }
+
+        if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+
+            boolean isNegativeExponent = false;
+
+            if (++i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+
+                isNegativeExponent = (s.charAt(i++) == '-');
+            }
+
+            int exponentStart = i;
+            int explicitExponent = 0;
+
+            for (; i < length && s.charAt(i) >= '0' && s.charAt(i) <= '9'; ++i) {
+
+                if (explicitExponent < 100000) { explicitExponent = explicitExponent * 10 + (s.charAt(i) - '0'); }
+            }
+
+            if (i == exponentStart) { return Double.parseDouble(s); }
+
+            exponent += isNegativeExponent? -explicitExponent : explicitExponent;
+        }
+
+        if (i != length || significantDigits > 19) {
+
+            return Double.parseDouble(s);
+        }
+
+        double number = toDouble(significand, exponent, isNegative);
+
+        return Double.isNaN(number)? Double.parseDouble(s) : number;
+    }
+
+    // significand (unsigned, exact) times 10^exponent, NaN when Eisel-Lemire cannot tell
+
+    private static double toDouble(long significand, int exponent, boolean isNegative) {
+
+        if (significand == 0) {
+
+            return isNegative? -0.0 : 0.0;
+        }
+
+        if (exponent >= -22 && exponent <= 22 && Long.compareUnsigned(significand, 1L << 53) <= 0) {
+
+            double number = (double)significand;
+
+            number = (exponent < 0)? number / EXACT_POWERS_OF_TEN[-exponent] : number * EXACT_POWERS_OF_TEN[exponent];
+
+            return isNegative? -number : number;
+        }
+
+        if (exponent < PowerTables.MIN_POWER_OF_FIVE) {
+
+            return isNegative? -0.0 : 0.0;
+
+        } else if (exponent > PowerTables.MAX_POWER_OF_FIVE) {
+
+            return isNegative? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+
+        int index = 2 * (exponent - PowerTables.MIN_POWER_OF_FIVE);
+        long factorHigh = PowerTables.powersOfFive[index];
+        long factorLow = PowerTables.powersOfFive[index + 1];
+        int leadingZeros = Long.numberOfLeadingZeros(significand);
+        long w = significand << leadingZeros;
+        long lower = w * factorHigh;
+        long upper = unsignedMultiplyHigh(w, factorHigh);
+
+        if ((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + w, lower) < 0) {
+
+            long productLow = w * factorLow;
+            long productMiddle = lower + unsignedMultiplyHigh(w, factorLow);
+
+            if (Long.compareUnsigned(productMiddle, lower) < 0) { upper++; }
+
+            if (productMiddle + 1 == 0 && (upper & 0x1FF) == 0x1FF && Long.compareUnsigned(productLow + w, productLow) < 0) {
+
+                return Double.NaN;
+            }
+
+            lower = productMiddle;
+        }
+
+        long upperBit = upper >>> 63;
+        long mantissa = upper >>> (upperBit + 9);
+
+        leadingZeros += (int)(1 ^ upperBit);
+
+        if (lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1) {
+
+            return Double.NaN; // exactly halfway, let the JDK break the tie
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+
+        if (mantissa >= (1L << 53)) {
+
+            mantissa = 1L << 52;
+            leadingZeros--;
+        }
+
+        mantissa &= ~(1L << 52);
+
+        long biasedExponent = (((152170 + 65536) * (long)exponent) >> 16) + 1024 + 63 - leadingZeros;
+
+        if (biasedExponent < 1 || biasedExponent > 2046) {
+
+            return Double.NaN; // subnormal or overflowing
+        }
+
+        return Double.longBitsToDouble(mantissa | (biasedExponent << 52) | (isNegative? 1L << 63 : 0));
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    private static String formatDouble(double number) {
+
+        byte[] buffer = new byte[32];
+
+        return new String(buffer, 0, formatDouble(number, buffer, 0), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String formatFloat(float number) {
+
+        byte[] buffer = new byte[32];
+
+        return new String(buffer, 0, formatFloat(number, buffer, 0), StandardCharsets.ISO_8859_1);
+    }
+
+    // the same for a float, at most 16 bytes, the digits are found with the high half of
+    // the double table (Giulietti's FloatToDecimal). Double.toString of the widened float
+    // would show the binary error (0.1f is 0.10000000149011612) and Float.toString of
+    // JDK 17 and older does not always pick the shortest decimal
+
+    private static int formatFloat(float number, byte[] buffer, int position) {
+
+        int bits = Float.floatToRawIntBits(number);
+        int t = bits & ((1 << 23) - 1);
+        int bq = (bits >>> 23) & 0xFF;
+
+        if (bq == 0xFF) {
+
+            return appendAscii((t != 0)? "NaN" : (bits > 0)? "Infinity" : "-Infinity", buffer, position);
+        }
+
+        if (bits < 0) {
+
+            buffer[position++] = '-';
+        }
+
+        if (bq != 0) {
+
+            int mq = 149 - bq + 1;						// q = -mq
+            int c = (1 << 23) | t;
+
+            if (0 < mq && mq < 24) {
+
+                int f = c >> mq;
+
+                if (f << mq == c) {
+
+                    return appendDecimal(f, 0, buffer, position); // an integer
+                }
+            }
+
+            return toShortestFloatDecimal(-mq, c, 0, buffer, position);
+
+        } else if (t != 0) {
+
+            return (t < 8)? toShortestFloatDecimal(-149, 10 * t, -1, buffer, position) : toShortestFloatDecimal(-149, t, 0, buffer, position);
+        }
+
+        return appendAscii("0.0", buffer, position);
+    }
+
+    private static int toShortestFloatDecimal(int q, int c, int dk, byte[] buffer, int position) {
+
+        int out = c & 0x1;
+        long cb = (long)c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        if (c != (1 << 23) || q == -149) {
+
+            cbl = cb - 2;
+            k = (int)(q * 661_971_961_083L >> 41);							// floor(log10(2^q))
+
+        } else {
+
+            cbl = cb - 1;
+            k = (int)(q * 661_971_961_083L + -274_743_187_321L >> 41);		// floor(log10(3/4 2^q))
+        }
+
+        int h = q + (int)(-k * 913_124_641_741L >> 38) + 33;				// floor(log2(10^-k)) + 33
+        long g = PowerTables.powersOfTen[2 * (k - PowerTables.MIN_K)] + 1;
+
+        int vb = roundToOdd(g, cb << h);
+        int vbl = roundToOdd(g, cbl << h);
+        int vbr = roundToOdd(g, cbr << h);
+
+        int s = vb >> 2;
+
+        if (s >= 100) {
+
+            int sp10 = 10 * (int)(s * 1_717_986_919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean isUpIn = vbl + out <= sp10 << 2;
+            boolean isWpIn = (tp10 << 2) + out <= vbr;
+
+            if (isUpIn != isWpIn) {
+
+                return appendDecimal(isUpIn? sp10 : tp10, k, buffer, position);
+            }
+        }
+
+        int t = s + 1;
+        boolean isUIn = vbl + out <= s << 2;
+        boolean isWIn = (t << 2) + out <= vbr;
+
+        if (isUIn != isWIn) {
+
+            return appendDecimal(isUIn? s : t, k + dk, buffer, position);
+        }
+
+        int cmp = vb - (s + t << 1);
+
+        return appendDecimal((cmp < 0 || cmp == 0 && (s & 0x1) == 0)? s : t, k + dk, buffer, position);
+    }
+
+    private static int roundToOdd(long g, long cp) {
+
+        long x1 = Math.multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+
+        return (int)(vbp | (x1 & 0xFFFF_FFFFL) + 0xFFFF_FFFFL >>> 32);
+    }
+
+    // writes the shortest decimal that rounds back to number, at most 25 bytes, and
+    // returns the position after it
+
+    private static int formatDouble(double number, byte[] buffer, int position) {
+
+        long bits = Double.doubleToRawLongBits(number);
+        long t = bits & ((1L << 52) - 1);
+        int bq = (int)(bits >>> 52) & 0x7FF;
+
+        if (bq == 0x7FF) {
+
+            return appendAscii((t != 0)? "NaN" : (bits > 0)? "Infinity" : "-Infinity", buffer, position);
+        }
+
+        if (bits < 0) {
+
+            buffer[position++] = '-';
+        }
+
+        if (bq != 0) {
+
+            int mq = 1074 - bq + 1;						// q = -mq
+            long c = (1L << 52) | t;
+
+            if (0 < mq && mq < 53) {
+
+                long f = c >> mq;
+
+                if (f << mq == c) {
+
+                    return appendDecimal(f, 0, buffer, position); // an integer
+                }
+            }
+
+            return toShortestDecimal(-mq, c, 0, buffer, position);
+
+        } else if (t != 0) {
+
+            return (t < 3)? toShortestDecimal(-1074, 10 * t, -1, buffer, position) : toShortestDecimal(-1074, t, 0, buffer, position);
+        }
+
+        return appendAscii("0.0", buffer, position);
+    }
+
+    // c 2^q is the double (c > 0), see figure 7 and 9 of "The Schubfach way to render doubles"
+
+    private static int toShortestDecimal(int q, long c, int dk, byte[] buffer, int position) {
+
+        int out = (int)c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        if (c != (1L << 52) || q == -1074) {
+
+            cbl = cb - 2;
+            k = (int)(q * 661_971_961_083L >> 41);							// floor(log10(2^q))
+
+        } else {
+
+            cbl = cb - 1;
+            k = (int)(q * 661_971_961_083L + -274_743_187_321L >> 41);		// floor(log10(3/4 2^q))
+        }
+
+        int h = q + (int)(-k * 913_124_641_741L >> 38) + 2;					// floor(log2(10^-k))
+        int index = 2 * (k - PowerTables.MIN_K);
+        long g1 = PowerTables.powersOfTen[index];
+        long g0 = PowerTables.powersOfTen[index + 1];
+
+        long vb = roundToOdd(g1, g0, cb << h);
+        long vbl = roundToOdd(g1, g0, cbl << h);
+        long vbr = roundToOdd(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+
+        if (s >= 100) {
+
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean isUpIn = vbl + out <= sp10 << 2;
+            boolean isWpIn = (tp10 << 2) + out <= vbr;
+
+            if (isUpIn != isWpIn) {
+
+                return appendDecimal(isUpIn? sp10 : tp10, k, buffer, position);
+            }
+        }
+
+        long t = s + 1;
+        boolean isUIn = vbl + out <= s << 2;
+        boolean isWIn = (t << 2) + out <= vbr;
+
+        if (isUIn != isWIn) {
+
+            return appendDecimal(isUIn? s : t, k + dk, buffer, position);
+        }
+
+        long cmp = vb - (s + t << 1);
+
+        return appendDecimal((cmp < 0 || cmp == 0 && (s & 0x1) == 0)? s : t, k + dk, buffer, position);
+    }
+
+    // writes the digits of f (f > 0) so that the last one ends up at buffer[end - 1]
+
+    private static void writeDigits(long f, byte[] buffer, int end) {
+
+        do {
+
+            buffer[--end] = (byte)('0' + f % 10);
+            f /= 10;
+
+        } while (f != 0);
+    }
+
+    private static long roundToOdd(long g1, long g0, long cp) {
+
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+
+        return vbp | (z & 0x7FFF_FFFF_FFFF_FFFFL) + 0x7FFF_FFFF_FFFF_FFFFL >>> 63;
+    }
+
+    // writes f 10^e like Double.toString: plain for 10^-3 <= v < 10^7, else d.dddEn. The
+    // digits are written back to front straight to their place in buffer
+
+    private static int appendDecimal(long f, int e, byte[] buffer, int position) {
+
+        while (f % 10 == 0) {
+
+            f /= 10;
+            e++;
+        }
+
+        int length = 1;
+
+        for (long n = f; n >= 10; n /= 10) {
+
+            length++;
+        }
+
+        int pointPosition = e + length; // the value is 0.digits 10^pointPosition
+
+        if (pointPosition >= length && pointPosition <= 7) {
+
+            writeDigits(f, buffer, position + length);
+            position += length;
+
+            for (int i = length; i < pointPosition; ++i) {
+
+                buffer[position++] = '0';
+            }
+
+            buffer[position++] = '.';
+            buffer[position++] = '0';
+
+        } else if (pointPosition > 0 && pointPosition <= 7) {
+
+            // the digits go one to the right, then the integer part moves back over the gap
+
+            writeDigits(f, buffer, position + 1 + length);
+
+            for (int i = 0; i < pointPosition; ++i) {
+
+                buffer[position + i] = buffer[position + 1 + i];
+            }
+
+            buffer[position + pointPosition] = '.';
+            position += 1 + length;
+
+        } else if (pointPosition > -3 && pointPosition <= 0) {
+
+            buffer[position++] = '0';
+            buffer[position++] = '.';
+
+            for (int i = pointPosition; i < 0; ++i) {
+
+                buffer[position++] = '0';
+            }
+
+            writeDigits(f, buffer, position + length);
+            position += length;
+
+        } else {
+
+            writeDigits(f, buffer, position + 1 + length);
+
+            buffer[position] = buffer[position + 1];
+            buffer[position + 1] = '.';
+            position += 1 + length;
+
+            if (length == 1) {
+
+                buffer[position++] = '0';
+            }
+
+            int exponent = pointPosition - 1;
+
+            buffer[position++] = 'E';
+
+            if (exponent < 0) {
+
+                buffer[position++] = '-';
+                exponent = -exponent;
+            }
+
+            if (exponent >= 100) { buffer[position++] = (byte)('0' + exponent / 100); }
+            if (exponent >= 10) { buffer[position++] = (byte)('0' + exponent / 10 % 10); }
+
+            buffer[position++] = (byte)('0' + exponent % 10);
+        }
+
+        return position;
+    }
+
+    private static int appendAscii(String ascii, byte[] buffer, int position) {
+
+        for (int i = 0; i < ascii.length(); ++i) {
+
+            buffer[position++] = (byte)ascii.charAt(i);
+        }
+
+        return position;
+    }
+
+    //
+    // ParseLimits
+    // Bounds for parsing untrusted input, set with setLimits(). Every limit is checked
+    // while the input is read so a document that breaks one fails with an
+    // InvalidSyntaxException at the offending char, before the rest of it is decoded:
+    // the input length up front, strings and numbers (in bytes of the source) by only
+    // scanning that far, and the depth, element count and attribute count of every
+    // Object as the tree is built. parse() enforces all of them, parseLazy only the
+    // input length, and parse(json, type) everything but the element and attribute
+    // counts. Attributes skipped by a Projection are not counted
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    public static final class ParseLimits {
+
+        public static final ParseLimits DEFAULT = new ParseLimits(DEFAULT_MAX_DEPTH, Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        private final int maxDepth;
+        private final long maxInputLength;
+        private final int maxStringLength;
+        private final int maxNumberLength;
+        private final int maxElementCount;
+        private final int maxAttributeCount;
+
+        private ParseLimits(int maxDepth, long maxInputLength, int maxStringLength, int maxNumberLength, int maxElementCount, int maxAttributeCount) {
+
+            this.maxDepth = maxDepth;
+            this.maxInputLength = maxInputLength;
+            this.maxStringLength = maxStringLength;
+            this.maxNumberLength = maxNumberLength;
+            this.maxElementCount = maxElementCount;
+            this.maxAttributeCount = maxAttributeCount;
+        }
+
+        public ParseLimits withMaxDepth(int maxDepth) {
+
+            if (maxDepth < 1) { throw new IllegalArgumentException("The maximum depth must be at least 1"); }
+
+            return new ParseLimits(maxDepth, maxInputLength, maxStringLength, maxNumberLength, maxElementCount, maxAttributeCount);
+        }
+
+        public ParseLimits withMaxInputLength(long maxInputLength) {
+
+            if (maxInputLength < 1) { throw new IllegalArgumentException("The maximum input length must be at least 1"); }
+
+            return new ParseLimits(maxDepth, maxInputLength, maxStringLength, maxNumberLength, maxElementCount, maxAttributeCount);
+        }
+
+        public ParseLimits withMaxStringLength(int maxStringLength) {
+
+            if (maxStringLength < 0) { throw new IllegalArgumentException("The maximum string length cannot be negative"); }
+
+            return new ParseLimits(maxDepth, maxInputLength, maxStringLength, maxNumberLength, maxElementCount, maxAttributeCount);
+        }
+
+        public ParseLimits withMaxNumberLength(int maxNumberLength) {
+
+            if (maxNumberLength < 1) { throw new IllegalArgumentException("The maximum number length must be at least 1"); }
+
+            return new ParseLimits(maxDepth, maxInputLength, maxStringLength, maxNumberLength, maxElementCount, maxAttributeCount);
+        }
+
+        public ParseLimits withMaxElementCount(int maxElementCount) {
+
+            if (maxElementCount < 1) { throw new IllegalArgumentException("The maximum element count must be at least 1"); }
+
+            return new ParseLimits(maxDepth, maxInputLength, maxStringLength, maxNumberLength, maxElementCount, maxAttributeCount);
+        }
+
+        public ParseLimits withMaxAttributeCount(int maxAttributeCount) {
+
+            if (maxAttributeCount < 0) { throw new IllegalArgumentException("The maximum attribute count cannot be negative"); }
+
+            return new ParseLimits(maxDepth, maxInputLength, maxStringLength, maxNumberLength, maxElementCount, maxAttributeCount);
+        }
+
+        public int getMaxDepth() {
+
+            return maxDepth;
+        }
+
+        public long getMaxInputLength() {
+
+            return maxInputLength;
+        }
+
+        public int getMaxStringLength() {
+
+            return maxStringLength;
+        }
+
+        public int getMaxNumberLength() {
+
+            return maxNumberLength;
+        }
+
+        public int getMaxElementCount() {
+
+            return maxElementCount;
+        }
+
+        public int getMaxAttributeCount() {
+
+            return maxAttributeCount;
+        }
+    }
+
+    //
+    // Instrumentation
+    // Per call statistics of parse() and Element.toJSON/writeTo, handed to the global
+    // InstrumentationListener and recorded as the JFR events com.aweform.JsonParse and
+    // com.aweform.JsonSerialize. Nothing is measured unless a listener is set or one of
+    // those events is enabled in a running recording, so the only cost otherwise is two
+    // volatile reads. The JFR classes are not touched before a recording starts, which
+    // keeps the library usable on runtimes without the jdk.jfr module. The counts are not
+    // kept by the parse loop, they come from a separate walk of the resulting tree once
+    // the call completed, and that walk is in neither the elapsed time nor the event
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private static volatile InstrumentationListener instrumentationListener;
+
+    // NOTE: the listener is called on the thread that parsed or wrote the JSON, right
+    // after the call completed, so it should be quick (calls that fail are not reported)
+
+    public interface InstrumentationListener {
+
+        default void onParse(CallStats stats) { }
+
+        default void onSerialize(CallStats stats) { }
+    }
+
+    public static void setInstrumentationListener(InstrumentationListener listener) {
+
+        instrumentationListener = listener;
+    }
+
+    public static InstrumentationListener getInstrumentationListener() {
+
+        return instrumentationListener;
+    }
+
+    // counts are of the Element tree that was parsed or written (counted in a second pass
+    // over that tree), so values skipped by a Projection are not included. Tokens are what the lexer sees: every scalar, bracket,
+    // attribute name, colon and comma. Strings include the attribute names and the depth
+    // is the number of nested Objects and Arrays (0 for a scalar). Values that could not
+    // be measured are -1, e.g. the bytes written to an Appendable that is not a
+    // CharSequence or the allocations when the JVM does not support counting them
+
+    public static final class CallStats {
+
+        private final boolean isParse;
+        private final long bytesIn;
+        private final long bytesOut;
+        private long tokenCount;
+        private long elementCount;
+        private int maxDepth;
+        private long stringCount;
+        private long numberCount;
+        private final long elapsedNanos;
+        private final long allocatedBytes;
+
+        private CallStats(boolean isParse, long bytesIn, long bytesOut, long elapsedNanos, long allocatedBytes) {
+
+            this.isParse = isParse;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        static CallStats of(boolean isParse, Element root, long bytesIn, long bytesOut, long elapsedNanos, long allocatedBytesBefore) {
+
+            long allocatedBytes = (allocatedBytesBefore < 0)? -1 : AllocationCounter.getAllocatedBytes() - allocatedBytesBefore;
+
+            CallStats stats = new CallStats(isParse, bytesIn, bytesOut, elapsedNanos, allocatedBytes);
+
+            if (root != null) {
+
+                stats.count(root, 0);
+            }
+
+            return stats;
+        }
+
+        static CallStats of(FrozenDocument document, int node, long bytesOut, long elapsedNanos, long allocatedBytesBefore) {
+
+            long allocatedBytes = (allocatedBytesBefore < 0)? -1 : AllocationCounter.getAllocatedBytes() - allocatedBytesBefore;
+
+            CallStats stats = new CallStats(false, -1, bytesOut, elapsedNanos, allocatedBytes);
+            stats.count(document, node, 0);
+
+            return stats;
+        }
+
+        private void count(FrozenDocument document, int node, int depth) {
+
+            elementCount++;
+
+            byte type = document.types[node];
+
+            if (type == ElementType.String.ordinal()) {
+
+                stringCount++;
+
+            } else if (type == ElementType.Number.ordinal()) {
+
+                numberCount++;
+            }
+
+            if (type != ElementType.Object.ordinal() && type != ElementType.Array.ordinal()) {
+
+                tokenCount++;
+                return;
+            }
+
+            maxDepth = Math.max(maxDepth, depth + 1);
+
+            int first = document.firstOrOffset[node];
+            int size = document.countOrLength[node];
+
+            tokenCount += 2 + Math.max(size - 1, 0);
+
+            if (type == ElementType.Object.ordinal()) {
+
+                tokenCount += 2 * size; // the name and the colon
+                stringCount += size;
+            }
+
+            for (int i = 0; i < size; ++i) {
+
+                count(document, first + i, depth + 1);
+            }
+        }
+
+        private void count(Element element, int depth) {
+
+            elementCount++;
+
+            if (element.type == ElementType.String) {
+
+                stringCount++;
+
+            } else if (element.type == ElementType.Number) {
+
+                numberCount++;
+            }
+
+            if (element.type != ElementType.Object && element.type != ElementType.Array) {
+
+                tokenCount++;
+                return;
+            }
+
+            maxDepth = Math.max(maxDepth, depth + 1);
+
+            int size = (element.elements == null)? 0 : element.elements.size();
+
+            tokenCount += 2 + Math.max(size - 1, 0);
+
+            if (element.type == ElementType.Object) {
+
+                tokenCount += 2 * size; // the name and the colon
+                stringCount += size;
+            }
+
+            for (int i = 0; i < size; ++i) {
+
+                count(element.elements.get(i), depth + 1);
+            }
+        }
+
+        public boolean isParse() {
+
+            return isParse;
+        }
+
+        public long getBytesIn() {
+
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+
+            return bytesOut;
+        }
+
+        public long getTokenCount() {
+
+            return tokenCount;
+        }
+
+        public long getElementCount() {
+
+            return elementCount;
+        }
+
+        public int getMaxDepth() {
+
+            return maxDepth;
+        }
+
+        public long getStringCount() {
+
+            return stringCount;
+        }
+
+        public long getNumberCount() {
+
+            return numberCount;
+        }
+
+        public long getElapsedNanos() {
+
+            return elapsedNanos;
+        }
+
+        public long getAllocatedBytes() {
+
+            return allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+
+            return (isParse? "parse" : "serialize") + " bytesIn=" + bytesIn + " bytesOut=" + bytesOut + " tokens=" + tokenCount + " elements=" + elementCount + " maxDepth=" + maxDepth + " strings=" + stringCount + " numbers=" + numberCount + " elapsedNanos=" + elapsedNanos + " allocatedBytes=" + allocatedBytes;
+        }
+    }
+
+    @Category({ "Aweform", "JSON" })
+    private static abstract class JsonCallEvent extends Event {
+
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+
+        @Label("Tokens")
+        long tokenCount;
+
+        @Label("Elements")
+        long elementCount;
+
+        @Label("Max Depth")
+        int maxDepth;
+
+        @Label("Strings")
+        long stringCount;
+
+        @Label("Numbers")
+        long numberCount;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    @Name("com.aweform.JsonParse")
+    @Label("JSON Parse")
+    @Description("A call to AweformJSON.parse()")
+    private static final class JsonParseEvent extends JsonCallEvent { }
+
+    @Name("com.aweform.JsonSerialize")
+    @Label("JSON Serialize")
+    @Description("A call to Element.toJSON() or Element.writeTo()")
+    private static final class JsonSerializeEvent extends JsonCallEvent { }
+
+    // whether the events are enabled in a running recording, kept up to date by a
+    // FlightRecorderListener. The listener is registered through JfrEvents inside a try,
+    // so a missing jdk.jfr module leaves both false instead of failing the caller
+
+    private static final class EventState {
+
+        static volatile boolean isParseEnabled;
+        static volatile boolean isSerializeEnabled;
+
+        static {
+
+            try {
+
+                JfrEvents.register();
+
+            } catch (LinkageError | RuntimeException ex) {
+
+                // no jdk.jfr module or no FlightRecorderPermission
+            }
+        }
+    }
+
+    // the only code that refers to the JFR classes, events are passed around as Object so
+    // the callers do not need them to be loadable
+
+    private static final class JfrEvents {
+
+        static void register() {
+
+            FlightRecorder.addListener(new FlightRecorderListener() {
+
+                @Override
+                public void recordingStateChanged(Recording recording) {
+
+                    update();
+                }
+            });
+
+            if (FlightRecorder.isInitialized()) {
+
+                update();
+            }
+        }
+
+        private static void update() {
+
+            EventState.isParseEnabled = EventType.getEventType(JsonParseEvent.class).isEnabled();
+            EventState.isSerializeEnabled = EventType.getEventType(JsonSerializeEvent.class).isEnabled();
+        }
+
+        static Object begin(boolean isParse) {
+
+            JsonCallEvent event = isParse? new JsonParseEvent() : new JsonSerializeEvent();
+            event.begin();
+
+            return event;
+        }
+
+        static void end(Object event) {
+
+            ((JsonCallEvent)event).end();
+        }
+
+        static void commit(Object callEvent, CallStats stats) {
+
+            JsonCallEvent event = (JsonCallEvent)callEvent;
+
+            if (event.shouldCommit()) {
+
+                event.bytesIn = stats.bytesIn;
+                event.bytesOut = stats.bytesOut;
+                event.tokenCount = stats.tokenCount;
+                event.elementCount = stats.elementCount;
+                event.maxDepth = stats.maxDepth;
+                event.stringCount = stats.stringCount;
+                event.numberCount = stats.numberCount;
+                event.allocatedBytes = stats.allocatedBytes;
+                event.commit();
+            }
+        }
+    }
+
+    private static void reportCall(InstrumentationListener listener, Object event, CallStats stats) {
+
+        if (event != null) {
+
+            JfrEvents.commit(event, stats);
+        }
+
+        if (listener == null) {
+
+            return;
+        }
+
+        if (stats.isParse) {
+
+            listener.onParse(stats);
+
+        } else {
+
+            listener.onSerialize(stats);
+        }
+    }
+
+    // the bytes allocated so far by the current thread, or -1 when the JVM cannot tell,
+    // the management beans are only loaded once a call is instrumented
+
+    private static long getAllocatedBytes() {
+
+        return AllocationCounter.getAllocatedBytes();
+    }
+
+    private static final class AllocationCounter {
+
+        private static final com.sun.management.ThreadMXBean THREADS = getThreadBean();
+
+        private static com.sun.management.ThreadMXBean getThreadBean() {
+
+            try {
+
+                java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+                if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()) {
+
+                    ((com.sun.management.ThreadMXBean)threads).setThreadAllocatedMemoryEnabled(true);
+
+                    return (com.sun.management.ThreadMXBean)threads;
+                }
+
+            } catch (LinkageError | RuntimeException ex) {
+
+                // no jdk.management module or no permission to enable the counter
+            }
+
+            return null;
+        }
+
+        static long getAllocatedBytes() {
+
+            return (THREADS == null)? -1 : THREADS.getCurrentThreadAllocatedBytes();
+        }
+    }
+
+    //
+    // LazyElement
+    // An Element returned by parseLazy() that keeps pointing into the source bytes.
+    // Containers only find the bounds of their children when they are first accessed
+    // through getAttribute, getAttributes, getItems, getAttributeAs* or toJSON, and
+    // Strings and Numbers are only decoded when they are returned by those methods,
+    // everything else is only bracket matched. NOTE: the public fields (value and
+    // elements) are only valid after such an access, and syntax errors inside regions
+    // that were skipped at parse time surface as an IllegalStateException
+    ////////////////////////////////////////////////////////////////////////////////////
+
+    private static class LazyElement extends Element {
+
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+        private final KeyCache keyCache;
+        private boolean isResolved;
+
+        public LazyElement(ElementType type, byte[] bytes, int start, int end, KeyCache keyCache) {
+
+            super(type, null);
+
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            this.keyCache = keyCache;
+        }
+
+        @Override
+        public Element getAttribute(String name) {
+
+            resolve();
+
+            Element attribute = super.getAttribute(name);
+
+            if (attribute instanceof LazyElement) {
+
+                ((LazyElement)attribute).resolveValue();
+            }
+
+            return attribute;
+        }
+
+        @Override
+        public List<Element> getAttributes() {
+
+            resolveChildValues();
+
+            return super.getAttributes();
+        }
+
+        @Override
+        public List<Element> getItems() {
+
+            resolveChildValues();
+
+            return super.getItems();
+        }
+
+        @Override
+        public long getValueAsLong(long defaultValue) {
+
+            resolveValue();
+
+            return super.getValueAsLong(defaultValue);
+        }
+
+        @Override
+        public double getValueAsDouble(double defaultValue) {
+
+            resolveValue();
+
+            return super.getValueAsDouble(defaultValue);
+        }
+
+        @Override
+        void writeTo(JsonOutput output, JsonStyle style, int depth) throws IOException {
+
+            resolveChildValues();
+
+            super.writeTo(output, style, depth);
+        }
+
+        private void resolveChildValues() {
+
+            resolve();
+
+            if (elements == null) {
+
+                return;
+            }
+
+            for (Element child : elements) {
+
+                if (child instanceof LazyElement) {
+
+                    ((LazyElement)child).resolveValue();
+                }
+            }
+        }
+
+        // Strings, Numbers, Booleans and Null get their value, containers only their
+        // (unresolved) children
+
+        private void resolveValue() {
+
+            if (!isResolved && type != ElementType.Object && type != ElementType.Array) {
+
+                resolve();
+            }
+        }
+
+        private void resolve() {
+
+            if (isResolved) {
+
+                return;
+            }
+
+            ParseContext parseContext = new ParseContext();
+            parseContext.bytes = bytes;
+            parseContext.index = start;
+            parseContext.end = end;
+            parseContext.keyCache = keyCache;
+
+            try {
+
+                if (type == ElementType.Object || type == ElementType.Array) {
+
+                    elements = parseLazyChildren(parseContext, type == ElementType.Object);
+
+                } else if (type == ElementType.String) {
+
+                    parseContext.index = start + 1;
+                    value = parseString(parseContext);
+
+                } else if (type == ElementType.Number) {
+
+                    setNumberValue(this, new String(bytes, start, end - start, StandardCharsets.ISO_8859_1), start);
+
+                } else {
+
+                    Token token = getNextToken(parseContext);
+
+                    if (parseContext.index != end || (token != Token.True && token != Token.False && token != Token.Null)) {
+
+                        throw new InvalidSyntaxException("Unexpected token (" + token + ") at char " + start);
+                    }
+
+                    value = (token == Token.True)? "true" : (token == Token.False)? "false" : "null";
+                }
+
+            } catch (InvalidSyntaxException ex) {
+
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+
+            isResolved = true;
+        }
+    }
+
+    private static List<Element> parseLazyChildren(ParseContext parseContext, boolean isObject) throws InvalidSyntaxException {
+
+        List<Element> children = isObject? new AttributeList() : new ArrayList<Element>();
+        Token endToken = isObject? Token.ObjectEnd : Token.ArrayEnd;
+
+        parseContext.index++; // skip { or [
+
+        Token nextToken = getNextToken(parseContext);
+
+        if (nextToken == endToken) {
+
+            return children;
+        }
+
+        while (true) {
+
+            String attributeName = null;
+
+            if (isObject) {
+
+                if (nextToken != Token.String) {
+
+                    throw new InvalidSyntaxException("Unexpected token (" + nextToken + ") at char " + parseContext.tokenIndex + " expected an attribute name");
+                }
+
+                attributeName = parseAttributeName(parseContext);
+
+                if (getNextToken(parseContext) != Token.Colon) {
+
+                    throw new InvalidSyntaxException("Unexpected token at char " + parseContext.tokenIndex + " expected a Colon before the attribute value");
+                }
+
+            } else {
+
+                parseContext.index = parseContext.tokenIndex; // the item starts with the token just read
+            }
+
+            Element child = createLazyElement(parseContext);
+            child.name = attributeName;
+
+            children.add(child);
+
+            nextToken = getNextToken(parseContext);
+
+            if (nextToken == Token.Comma) {
+
+                nextToken = getNextToken(parseContext);
+
+            } else if (nextToken == endToken) {
+
+                return children;
+
+            } else {
+
+                throw new InvalidSyntaxException("Unexpected token (" + nextToken + ") at char " + parseContext.tokenIndex + " expected a Comma or " + endToken);
+            }
+        }
+    }
+
+    private static Element createLazyElement(ParseContext parseContext) throws InvalidSyntaxException {
+
+        skipWhitespace(parseContext);
+
+        int start = parseContext.index;
+
+        if (start == parseContext.end) {
+
+            throw new InvalidSyntaxException("Unexpected end of input at char " + start);
+        }
+
+        byte c = parseContext.bytes[start];
+        ElementType type;
+
+        if (c == '{') {
+
+            type = ElementType.Object;
+
+        } else if (c == '[') {
+
+            type = ElementType.Array;
+
+        } else if (c == '"') {
+
+            type = ElementType.String;
+
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+
+            type = ElementType.Number;
+
+        } else if (c == 't' || c == 'f') {
+
+            type = ElementType.Boolean;
+
+        } else if (c == 'n') {
+
+            type = ElementType.Null;
+
+        } else {
+
+            throw new InvalidSyntaxException("Unexpected character at char " + start);
+        }
+
+        int end = skipValue(parseContext.bytes, start, parseContext.end);
+
+        if (end == -1) {
+
+            throw new InvalidSyntaxException("Found an incomplete " + type + " at char " + start);
+        }
+
+        parseContext.index = end;
+
+        return new LazyElement(type, parseContext.bytes, start, end, parseContext.keyCache);
+    }
+
+    // finds the end of the value starting at index by only matching brackets and quotes,
+    // returns the index after the value or -1 if the value is incomplete
+
+    private static int skipValue(byte[] bytes, int index, int end) {
+
+        byte c = bytes[index];
+
+        if (c == '"') {
+
+            return skipString(bytes, index + 1, end);
+
+        } else if (c != '{' && c != '[') {
+
+            while (index < end) {
+
+                c = bytes[index];
+
+                if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+
+                    break;
+                }
+
+                index++;
+            }
+
+            return index;
+        }
+
+        int depth = 0;
+
+        while (index < end) {
+
+            c = bytes[index++];
+
+            if (c == '"') {
+
+                index = skipString(bytes, index, end);
+
+                if (index == -1) {
+
+                    return -1;
+                }
+
+            } else if (c == '{' || c == '[') {
+
+                depth++;
+
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    // index is the first byte after the opening quote, returns the index after the
+    // closing quote or -1 if the string is incomplete
+
+    private static int skipString(byte[] bytes, int index, int end) {
+
+        while (index < end) {
+
+            index = indexOfQuoteOrBackslash(bytes, index, end);
+
+            if (index == end) {
+
+                break;
+
+            } else if (bytes[index] == '"') {
+
+                return index + 1;
+            }
+
+            index += 2; // skip the escaped char
+        }
+
+        return -1;
+    }
+
+    // SWAR (SIMD within a register) scan that tests eight bytes per step for a quote or a
+    // backslash, returns the index of the first one or end if there is none. The
+    // incubating Vector API would need extra modules at compile and run time, this
+    // plain Java version works on any JVM
+
+    private static int indexOfQuoteOrBackslash(byte[] bytes, int index, int end) {
+
+        while (index + 8 <= end) {
+
+            long word = (long)LONG_VIEW.get(bytes, index);
+            long mask = zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES);
+
+            if (mask != 0) {
+
+                return index + (Long.numberOfTrailingZeros(mask) >>> 3);
+            }
+
+            index += 8;
+        }
+
+        while (index < end) {
+
+            byte b = bytes[index];
+
+            if (b == '"' || b == '\\') {
+
+                return index;
+            }
+
+            index++;
+        }
+
+        return end;
+    }
+
+    // sets the high bit of every zero byte of word, borrows can only cause false
+    // positives above the lowest zero byte so the lowest set bit is always exact
+
+    private static long zeroBytes(long word) {
+
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int index, int end) {
+
+        while (index < end && CHARACTER_CLASSES[bytes[index] & 0xFF] == WHITESPACE_CHARACTER) {
+
+            index++;
+        }
+
+        return index;
+    }
+
+    private static void skipWhitespace(ParseContext parseContext) {
+
+        while (parseContext.index < parseContext.end && CHARACTER_CLASSES[parseContext.bytes[parseContext.index] & 0xFF] == WHITESPACE_CHARACTER) {
+
+            parseContext.index++;
+        }
+    }
+
+    private static int spreadHash(int hash) {
+
+        return hash ^ (hash >>> 16);
     }
 }
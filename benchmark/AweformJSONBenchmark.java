@@ -0,0 +1,330 @@
+package com.aweform.benchmark;
+
+import com.aweform.AweformJSON;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//
+// AweformJSONBenchmark
+// The JMH benchmarks used as the regression gate for performance changes, every
+// AweformJSON operation has a Jackson (JsonNode tree) counterpart as the reference.
+// The corpus parameter selects the input: the synthetic ones are generated, the
+// standard ones (twitter.json, canada.json, citm_catalog.json) are read from the
+// directory in the corpus.dir system property. Run with -prof gc for the allocated
+// bytes per operation (gc.alloc.rate.norm) and with -bm sample for the percentiles
+//
+// mvn -f benchmark/pom.xml package
+// java -jar benchmark/target/benchmarks.jar -prof gc
+// java -jar benchmark/target/benchmarks.jar -p corpus=twitter.json,canada.json -jvmArgs -Dcorpus.dir=<directory>
+////////////////////////////////////////////////////////////////////////////////////
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AweformJSONBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+
+        @Param({ "synthetic-deep", "synthetic-wide", "synthetic-records", "synthetic-numbers" })
+        public String corpus;
+
+        final AweformJSON aweformJSON = new AweformJSON();
+        final ObjectMapper objectMapper = new ObjectMapper();
+
+        byte[] bytes;
+        String json;
+        AweformJSON.Element element;
+        JsonNode node;
+        ByteArrayOutputStream outputStream;
+
+        @Setup
+        public void setup() throws Exception {
+
+            bytes = loadCorpus(corpus);
+            json = new String(bytes, StandardCharsets.UTF_8);
+            element = aweformJSON.parse(json);
+            node = objectMapper.readTree(bytes);
+            outputStream = new ByteArrayOutputStream(bytes.length * 2);
+        }
+    }
+
+    @Benchmark
+    public AweformJSON.Element parseString(Corpus corpus) throws Exception {
+
+        return corpus.aweformJSON.parse(corpus.json);
+    }
+
+    @Benchmark
+    public AweformJSON.Element parseBytes(Corpus corpus) throws Exception {
+
+        return corpus.aweformJSON.parse(corpus.bytes);
+    }
+
+    @Benchmark
+    public String toJSON(Corpus corpus) {
+
+        return corpus.element.toJSON();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream writeToOutputStream(Corpus corpus) throws IOException {
+
+        corpus.outputStream.reset();
+        corpus.element.writeTo(corpus.outputStream);
+
+        return corpus.outputStream;
+    }
+
+    @Benchmark
+    public JsonNode jacksonParseString(Corpus corpus) throws Exception {
+
+        return corpus.objectMapper.readTree(corpus.json);
+    }
+
+    @Benchmark
+    public JsonNode jacksonParseBytes(Corpus corpus) throws Exception {
+
+        return corpus.objectMapper.readTree(corpus.bytes);
+    }
+
+    @Benchmark
+    public String jacksonToJSON(Corpus corpus) throws Exception {
+
+        return corpus.objectMapper.writeValueAsString(corpus.node);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream jacksonWriteToOutputStream(Corpus corpus) throws IOException {
+
+        corpus.outputStream.reset();
+        corpus.objectMapper.writeValue(corpus.outputStream, corpus.node);
+
+        return corpus.outputStream;
+    }
+
+    // lookups on a single wide Object, independent of the corpus
+
+    @State(Scope.Benchmark)
+    public static class WideObject {
+
+        final AweformJSON aweformJSON = new AweformJSON();
+        final String[] names = new String[1000];
+        AweformJSON.Element element;
+        JsonNode node;
+
+        @Setup
+        public void setup() throws Exception {
+
+            String json = createWideDocument(names.length);
+
+            for (int i = 0; i < names.length; ++i) {
+
+                names[i] = "field" + i;
+            }
+
+            element = aweformJSON.parse(json);
+            node = new ObjectMapper().readTree(json);
+        }
+    }
+
+    @Benchmark
+    public void getAttributeWide(WideObject wide, Blackhole blackhole) {
+
+        for (String name : wide.names) {
+
+            blackhole.consume(wide.element.getAttribute(name));
+        }
+    }
+
+    @Benchmark
+    public long getAttributeAsWide(WideObject wide) {
+
+        String[] names = wide.names;
+        long sum = 0;
+
+        for (int i = 0; i < names.length; i += 4) {
+
+            sum += wide.element.getAttributeAsLong(names[i]);
+            sum += wide.element.getAttributeAsInt(names[i + 1]);
+            sum += wide.element.getAttributeAsDouble(names[i + 2]).longValue();
+            sum += wide.element.getAttributeAsString(names[i + 3]).length();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public AweformJSON.Element setAttributeWide(WideObject wide) throws Exception {
+
+        AweformJSON.Element object = wide.aweformJSON.parse("{}");
+
+        for (int i = 0; i < wide.names.length; ++i) {
+
+            object.setAttribute(wide.names[i], i);
+        }
+
+        return object;
+    }
+
+    @Benchmark
+    public void jacksonGetWide(WideObject wide, Blackhole blackhole) {
+
+        for (String name : wide.names) {
+
+            blackhole.consume(wide.node.get(name));
+        }
+    }
+
+    @Benchmark
+    public long jacksonGetAsWide(WideObject wide) {
+
+        String[] names = wide.names;
+        long sum = 0;
+
+        for (int i = 0; i < names.length; i += 4) {
+
+            sum += wide.node.get(names[i]).asLong();
+            sum += wide.node.get(names[i + 1]).asInt();
+            sum += (long)wide.node.get(names[i + 2]).asDouble();
+            sum += wide.node.get(names[i + 3]).asText().length();
+        }
+
+        return sum;
+    }
+
+    private static byte[] loadCorpus(String name) throws IOException {
+
+        if (name.equals("synthetic-deep")) {
+
+            return createDeepDocument(1000).getBytes(StandardCharsets.UTF_8);
+
+        } else if (name.equals("synthetic-wide")) {
+
+            return createWideDocument(1000).getBytes(StandardCharsets.UTF_8);
+
+        } else if (name.equals("synthetic-records")) {
+
+            return createRecordsDocument(5000).getBytes(StandardCharsets.UTF_8);
+
+        } else if (name.equals("synthetic-numbers")) {
+
+            return createNumbersDocument(50000).getBytes(StandardCharsets.UTF_8);
+        }
+
+        String directory = System.getProperty("corpus.dir");
+
+        if (directory == null) {
+
+            throw new IllegalArgumentException("The corpus " + name + " is read from the directory in -Dcorpus.dir");
+        }
+
+        Path path = Paths.get(directory, name);
+
+        return Files.readAllBytes(path);
+    }
+
+    private static String createDeepDocument(int depth) {
+
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < depth; ++i) {
+
+            sb.append((i % 2 == 0)? "{\"child\": " : "[");
+        }
+
+        sb.append("null");
+
+        for (int i = depth - 1; i >= 0; --i) {
+
+            sb.append((i % 2 == 0)? "}" : "]");
+        }
+
+        return sb.toString();
+    }
+
+    private static String createWideDocument(int fieldCount) {
+
+        StringBuilder sb = new StringBuilder("{");
+
+        for (int i = 0; i < fieldCount; ++i) {
+
+            if (i > 0) { sb.append(", "); }
+
+            sb.append("\"field").append(i).append("\": ");
+
+            if (i % 4 == 3) {
+
+                sb.append("\"value ").append(i).append("\"");
+
+            } else if (i % 4 == 2) {
+
+                sb.append(i).append(".25");
+
+            } else {
+
+                sb.append(i * 1000003L);
+            }
+        }
+
+        return sb.append("}").toString();
+    }
+
+    private static String createRecordsDocument(int recordCount) {
+
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("[");
+
+        for (int i = 0; i < recordCount; ++i) {
+
+            if (i > 0) { sb.append(",\n"); }
+
+            sb.append("{\"id\": ").append(1_000_000_000_000L + i)
+                .append(", \"user\": {\"name\": \"user").append(random.nextInt(100000)).append("\", \"verified\": ").append(random.nextBoolean())
+                .append("}, \"text\": \"Lorem ipsum dolor sit amet, \\\"quoted\\\" \\u00e9t\\u00e9 caf\u00e9 \\n line ").append(i)
+                .append("\", \"tags\": [\"a\", \"b\", \"c\"], \"score\": ").append(random.nextDouble())
+                .append(", \"reply\": null}");
+        }
+
+        return sb.append("]").toString();
+    }
+
+    private static String createNumbersDocument(int pointCount) {
+
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("{\"type\": \"LineString\", \"coordinates\": [");
+
+        for (int i = 0; i < pointCount; ++i) {
+
+            if (i > 0) { sb.append(","); }
+
+            sb.append("[").append(-180 + random.nextDouble() * 360).append(",").append(-90 + random.nextDouble() * 180).append("]");
+        }
+
+        return sb.append("]}").toString();
+    }
+}
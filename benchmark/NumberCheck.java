@@ -0,0 +1,200 @@
+package com.aweform.benchmark;
+
+import com.aweform.AweformJSON;
+
+import java.util.List;
+import java.util.Random;
+
+//
+// NumberCheck
+// The randomized differential check of the number conversions against the JDK. It
+// writes random doubles and floats (random bit patterns, so every exponent and the
+// subnormals are covered) and parses random decimal texts, then compares:
+//   - the written text reads back to the same bits with Double.parseDouble/Float.parseFloat
+//   - the written text has no more digits than Double/Float.toString, and is equal
+//     to it on JDK 19 and later where those are the shortest decimals too
+//   - the parsed value is bit identical to Double.parseDouble of the same text
+// The exit status is 1 when anything differs, the seed is printed to replay a run
+//
+// mvn -f benchmark/pom.xml package
+// java -cp benchmark/target/benchmarks.jar com.aweform.benchmark.NumberCheck [count] [seed]
+////////////////////////////////////////////////////////////////////////////////////
+
+public class NumberCheck {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED = 20;
+
+    private static final boolean SHORTEST_JDK = Runtime.version().feature() >= 19;
+
+    private final AweformJSON aweformJSON = new AweformJSON();
+    private final Random random;
+    private long failures;
+
+    private NumberCheck(long seed) {
+
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        long count = (args.length > 0)? Long.parseLong(args[0]) : 10_000_000L;
+        long seed = (args.length > 1)? Long.parseLong(args[1]) : new Random().nextLong();
+
+        System.out.println("NumberCheck of " + count + " values, seed " + seed + (SHORTEST_JDK? "" : ", digit counts only (JDK < 19)"));
+
+        NumberCheck check = new NumberCheck(seed);
+
+        for (long done = 0; done < count; done += BATCH_SIZE) {
+
+            check.checkDoubles();
+            check.checkFloats();
+            check.checkDecimals();
+        }
+
+        System.out.println((check.failures == 0)? "OK" : check.failures + " failures");
+
+        if (check.failures > 0) {
+
+            System.exit(1);
+        }
+    }
+
+    private void checkDoubles() throws Exception {
+
+        double[] numbers = new double[BATCH_SIZE];
+
+        for (int i = 0; i < numbers.length; ++i) {
+
+            do {
+
+                numbers[i] = Double.longBitsToDouble(random.nextLong());
+
+            } while (!Double.isFinite(numbers[i]));
+        }
+
+        List<AweformJSON.Element> items = aweformJSON.parse(AweformJSON.toJSON(numbers, AweformJSON.JsonStyle.Compact)).getItems();
+
+        for (int i = 0; i < numbers.length; ++i) {
+
+            String text = items.get(i).value;
+            String expected = Double.toString(numbers[i]);
+
+            if (Double.doubleToRawLongBits(Double.parseDouble(text)) != Double.doubleToRawLongBits(numbers[i])) {
+
+                fail("double " + expected + " was written as " + text + " which reads back as " + Double.parseDouble(text));
+
+            } else if (SHORTEST_JDK? !text.equals(expected) : countDigits(text) > countDigits(expected)) {
+
+                fail("double " + expected + " was written as " + text);
+            }
+
+            checkParsed(items.get(i), text);
+        }
+    }
+
+    private void checkFloats() throws Exception {
+
+        float[] numbers = new float[BATCH_SIZE];
+
+        for (int i = 0; i < numbers.length; ++i) {
+
+            do {
+
+                numbers[i] = Float.intBitsToFloat(random.nextInt());
+
+            } while (!Float.isFinite(numbers[i]));
+        }
+
+        List<AweformJSON.Element> items = aweformJSON.parse(AweformJSON.toJSON(numbers, AweformJSON.JsonStyle.Compact)).getItems();
+
+        for (int i = 0; i < numbers.length; ++i) {
+
+            String text = items.get(i).value;
+            String expected = Float.toString(numbers[i]);
+
+            if (Float.floatToRawIntBits(Float.parseFloat(text)) != Float.floatToRawIntBits(numbers[i])) {
+
+                fail("float " + expected + " was written as " + text + " which reads back as " + Float.parseFloat(text));
+
+            } else if (SHORTEST_JDK? !text.equals(expected) : countDigits(text) > countDigits(expected)) {
+
+                fail("float " + expected + " was written as " + text);
+            }
+        }
+    }
+
+    // decimal texts of 1 to 25 digits with exponents around the whole double range,
+    // the short ones go through the fast paths of the parser and the long ones not
+
+    private void checkDecimals() throws Exception {
+
+        StringBuilder sb = new StringBuilder("[");
+
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+
+            if (i > 0) { sb.append(','); }
+
+            if (random.nextBoolean()) { sb.append('-'); }
+
+            int digits = 1 + random.nextInt(random.nextBoolean()? 19 : 25);
+            int pointPosition = random.nextInt(digits + 1);
+
+            sb.append((char)('1' + random.nextInt(9)));
+
+            for (int j = 1; j < digits; ++j) {
+
+                if (j == pointPosition) { sb.append('.'); }
+
+                sb.append((char)('0' + random.nextInt(10)));
+            }
+
+            if (random.nextBoolean()) {
+
+                sb.append('e').append(random.nextInt(660) - 340);
+            }
+        }
+
+        List<AweformJSON.Element> items = aweformJSON.parse(sb.append(']').toString()).getItems();
+
+        for (AweformJSON.Element item : items) {
+
+            checkParsed(item, item.value);
+        }
+    }
+
+    private void checkParsed(AweformJSON.Element item, String text) {
+
+        double number = item.getValueAsDouble(Double.NaN);
+
+        if (Double.doubleToRawLongBits(number) != Double.doubleToRawLongBits(Double.parseDouble(text))) {
+
+            fail(text + " was parsed as " + number + " instead of " + Double.parseDouble(text));
+        }
+    }
+
+    // the significant digits, without the sign, the exponent and the leading and
+    // trailing zeros
+
+    private static int countDigits(String text) {
+
+        int end = text.indexOf('E');
+        String digits = ((end < 0)? text : text.substring(0, end)).replace("-", "").replace(".", "");
+        int start = 0;
+
+        end = digits.length();
+
+        while (start < end - 1 && digits.charAt(start) == '0') { start++; }
+        while (end > start + 1 && digits.charAt(end - 1) == '0') { end--; }
+
+        return end - start;
+    }
+
+    private void fail(String message) {
+
+        if (++failures <= MAX_REPORTED) {
+
+            System.out.println(message);
+        }
+    }
+}